@@ -0,0 +1,143 @@
+package nl.ls31.qrscan.benchmark;
+
+import com.google.zxing.WriterException;
+import nl.ls31.qrscan.core.QrcodeImageWriter;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Generates the fixture set for the benchmarks: PDF files that look like scanned documents, i.e. every page is a
+ * single JPEG image of the full page, with a QR code in the top left corner of the first page.
+ *
+ * <p>
+ * Fixtures are generated from scratch for every benchmark run, so the numbers only depend on the code under test and
+ * on the PDFBox and ZXing versions.
+ * </p>
+ *
+ * @author Lars Steggink
+ */
+public class BenchmarkFixtures {
+    /**
+     * QR code in every fixture.
+     */
+    final static public String QR_CODE = "BENCH_0001";
+    /**
+     * Resolution at which the fixture pages were 'scanned'.
+     */
+    final static private int SCAN_DPI = 200;
+    /**
+     * Size of the QR code on the page (px at SCAN_DPI), about 2.5 cm.
+     */
+    final static private int QR_SIZE = 200;
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Creates a temporary directory for fixtures.
+     *
+     * @return directory
+     * @throws IOException if unable to create the directory
+     */
+    public static Path createDirectory() throws IOException {
+        return Files.createTempDirectory("qrscan-bench");
+    }
+
+    /**
+     * Removes a fixture directory and everything in it.
+     *
+     * @param dir directory
+     * @throws IOException if unable to remove a file
+     */
+    public static void delete(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * Writes a 'scanned' A4 PDF file with a QR code on the first page.
+     *
+     * @param file      path of the PDF file
+     * @param pageCount number of pages
+     * @return path of the PDF file
+     * @throws IOException     if unable to write the file
+     * @throws WriterException if unable to encode the QR code
+     */
+    public static Path writeScannedPdf(Path file, int pageCount) throws IOException, WriterException {
+        BufferedImage qrImage = createQRImage(file.resolveSibling(file.getFileName() + ".gif"));
+        try (PDDocument document = new PDDocument()) {
+            for (int i = 0; i < pageCount; i++) {
+                PDPage page = new PDPage(PDRectangle.A4);
+                document.addPage(page);
+                BufferedImage scan = createScan(page.getMediaBox(), i == 0 ? qrImage : null);
+                PDImageXObject image = JPEGFactory.createFromImage(document, scan, 0.8f);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.drawImage(image, 0, 0, page.getMediaBox().getWidth(), page.getMediaBox().getHeight());
+                }
+            }
+            document.save(file.toFile());
+        }
+        return file;
+    }
+
+    /**
+     * Creates the QR code image, using the same writer as the application.
+     *
+     * @param gifFile temporary GIF file
+     * @return QR code image
+     * @throws IOException     if unable to write or read the GIF file
+     * @throws WriterException if unable to encode the QR code
+     */
+    private static BufferedImage createQRImage(Path gifFile) throws IOException, WriterException {
+        try {
+            QrcodeImageWriter.writeGIF(gifFile, QR_CODE, QR_SIZE, false);
+            return ImageIO.read(gifFile.toFile());
+        } finally {
+            Files.deleteIfExists(gifFile);
+        }
+    }
+
+    /**
+     * Creates the image of a scanned page: white, with some lines of 'text', and optionally a QR code.
+     *
+     * @param mediaBox page size (pt)
+     * @param qrImage  QR code image, or null
+     * @return page image
+     */
+    private static BufferedImage createScan(PDRectangle mediaBox, BufferedImage qrImage) {
+        int width = Math.round(mediaBox.getWidth() / 72 * SCAN_DPI);
+        int height = Math.round(mediaBox.getHeight() / 72 * SCAN_DPI);
+        BufferedImage scan = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scan.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.setColor(Color.DARK_GRAY);
+            for (int y = height / 4; y < height - SCAN_DPI; y += SCAN_DPI / 4) {
+                graphics.fillRect(SCAN_DPI, y, width - 2 * SCAN_DPI, SCAN_DPI / 12);
+            }
+            if (qrImage != null) {
+                graphics.drawImage(qrImage, SCAN_DPI / 2, SCAN_DPI / 2, null);
+            }
+        } finally {
+            graphics.dispose();
+        }
+        return scan;
+    }
+}
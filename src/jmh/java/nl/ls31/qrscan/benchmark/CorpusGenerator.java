@@ -0,0 +1,411 @@
+package nl.ls31.qrscan.benchmark;
+
+import com.google.zxing.NotFoundException;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import nl.ls31.qrscan.core.DecodeChain;
+import nl.ls31.qrscan.core.QrcodeImageWriter;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Generates a synthetic corpus of PDF files with known QR codes for load testing, and a ground truth manifest.
+ *
+ * <p>
+ * The documents vary in kind, page count, position and size of the QR code, and the page it is on. Three kinds of
+ * documents are generated: <i>SCANNED</i> documents of which every page is a JPEG image (at 150 to 300 DPI, slightly
+ * rotated, with light speckle noise), <i>VECTOR</i> documents of which the QR code is drawn as vector graphics, and
+ * <i>EMBEDDED</i> documents with vector text and the QR code as a lossless image. Scanned QR codes are at least
+ * MIN_MODULE_PIXELS pixels per module, as on a real scan that is meant to be read. A few documents have no QR code at
+ * all. The same seed always gives the same manifest and the same page content.
+ * </p>
+ *
+ * <p>
+ * The manifest (manifest.csv) lists for every file the QR code ("" if none), the page with the QR code (0 if none), how
+ * the file was generated, and whether the QR code is decodable at all: decoded from the scanned page image, or from a
+ * render of the page at 300 DPI. Use CorpusScorer to scan a corpus and score the results against the manifest.
+ * </p>
+ *
+ * <p>
+ * Usage: CorpusGenerator &lt;output dir&gt; &lt;number of files&gt; [seed]
+ * </p>
+ *
+ * @author Lars Steggink
+ */
+public class CorpusGenerator {
+    /**
+     * Name of the ground truth manifest in the corpus directory.
+     */
+    final static public String MANIFEST = "manifest.csv";
+    final static private String LSEP = System.lineSeparator();
+    final static private float MARGIN = 36;
+    /**
+     * Minimum size (px) of a QR code module on a scanned page.
+     */
+    final static private int MIN_MODULE_PIXELS = 3;
+    /**
+     * DPI setting of the decodability check, the highest DPI setting of the scanner by default.
+     */
+    final static private int CHECK_DPI = 300;
+    private final Random random;
+
+    private CorpusGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CorpusGenerator <output dir> <number of files> [seed]");
+            System.exit(2);
+        }
+        Path outputDir = Paths.get(args[0]);
+        int count = Integer.parseInt(args[1]);
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+        Files.createDirectories(outputDir);
+
+        long start = System.nanoTime();
+        AtomicInteger generated = new AtomicInteger();
+        // Every document has its own generator, so documents can be written in parallel and do not depend on each
+        // other. The manifest is still in file order.
+        List<String> manifestLines = IntStream.range(0, count).parallel().mapToObj(i -> {
+            Document document = new CorpusGenerator(seed * 1_000_003 + i).plan(i);
+            try {
+                document.write(outputDir.resolve(document.fileName));
+                document.checkDecodable(outputDir.resolve(document.fileName));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (WriterException e) {
+                throw new IllegalStateException(e);
+            }
+            if (generated.incrementAndGet() % 100 == 0) {
+                System.err.println("Generated " + generated.get() + " of " + count + " files.");
+            }
+            return document.toManifestLine();
+        }).collect(Collectors.toList());
+        try (BufferedWriter manifest = Files.newBufferedWriter(outputDir.resolve(MANIFEST))) {
+            manifest.write("File,QRCode,Page,PageCount,Kind,SizePt,X,Y,Dpi,Noise,Rotation,Decodable" + LSEP);
+            for (String line : manifestLines) {
+                manifest.write(line + LSEP);
+            }
+        }
+        System.err.printf(Locale.ROOT, "Generated %d files in %.1f s.%n", count, (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Decides randomly how a document looks.
+     *
+     * @param index number of the document
+     * @return document plan
+     */
+    private Document plan(int index) {
+        Document document = new Document();
+        document.fileName = String.format(Locale.ROOT, "corpus-%06d.pdf", index);
+        document.pageCount = 1 + random.nextInt(6);
+        double kind = random.nextDouble();
+        document.kind = kind < 0.6 ? Kind.SCANNED : kind < 0.85 ? Kind.VECTOR : Kind.EMBEDDED;
+        if (random.nextDouble() < 0.05) {
+            document.qrCode = "";
+            document.qrPage = 0;
+        } else {
+            document.qrCode = String.format(Locale.ROOT, "DOC%06d_%c%d", index, (char) ('A' + random.nextInt(26)),
+                    random.nextInt(10));
+            double page = random.nextDouble();
+            document.qrPage = page < 0.7 ? 1
+                    : page < 0.85 ? document.pageCount : 1 + random.nextInt(document.pageCount);
+        }
+        document.sizePt = 28 + random.nextInt(73);
+        if (document.kind == Kind.SCANNED) {
+            document.dpi = new int[]{150, 200, 300}[random.nextInt(3)];
+            // Real scans have a few specks of dust, not percents of random pixels.
+            document.noise = random.nextDouble() * 0.002;
+            document.rotation = (random.nextDouble() - 0.5) * 4;
+            document.jpegQuality = 0.6f + random.nextFloat() * 0.35f;
+            if (!document.qrCode.isEmpty()) {
+                document.sizePt = Math.max(document.sizePt, minimumSizePt(document.qrCode, document.dpi));
+            }
+        }
+        PDRectangle a4 = PDRectangle.A4;
+        switch (random.nextInt(5)) {
+            case 0:
+                document.x = MARGIN;
+                document.y = MARGIN;
+                break;
+            case 1:
+                document.x = a4.getWidth() - MARGIN - document.sizePt;
+                document.y = MARGIN;
+                break;
+            case 2:
+                document.x = MARGIN;
+                document.y = a4.getHeight() - MARGIN - document.sizePt;
+                break;
+            case 3:
+                document.x = a4.getWidth() - MARGIN - document.sizePt;
+                document.y = a4.getHeight() - MARGIN - document.sizePt;
+                break;
+            default:
+                document.x = (a4.getWidth() - document.sizePt) / 2;
+                document.y = (a4.getHeight() - document.sizePt) / 2;
+        }
+        // Jitter, as if placed by hand. Positions are from the top left corner (pt).
+        document.x += random.nextInt(20);
+        document.y += random.nextInt(20);
+        return document;
+    }
+
+    /**
+     * Gets the smallest size of a scanned QR code with modules of at least MIN_MODULE_PIXELS pixels.
+     *
+     * @param qrCode QR code
+     * @param dpi    resolution of the scan
+     * @return size (pt)
+     */
+    private static int minimumSizePt(String qrCode, int dpi) {
+        try {
+            int modules = QrcodeImageWriter.encode(qrCode, 1).getWidth();
+            return (int) Math.ceil(modules * MIN_MODULE_PIXELS * 72.0 / dpi);
+        } catch (WriterException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Ways of generating a document.
+     */
+    private enum Kind {
+        SCANNED, VECTOR, EMBEDDED
+    }
+
+    /**
+     * Plan of a single document.
+     */
+    private class Document {
+        private String fileName;
+        private Kind kind;
+        private int pageCount;
+        private String qrCode;
+        private int qrPage;
+        private int sizePt;
+        private float x;
+        private float y;
+        private int dpi;
+        private double noise;
+        private double rotation;
+        private float jpegQuality;
+        private BufferedImage scannedQRPage;
+        private boolean decodable;
+
+        /**
+         * Writes the PDF file.
+         *
+         * @param file path of the PDF file
+         * @throws IOException     if unable to write the file
+         * @throws WriterException if unable to encode the QR code
+         */
+        private void write(Path file) throws IOException, WriterException {
+            try (PDDocument pdf = new PDDocument()) {
+                for (int page = 1; page <= pageCount; page++) {
+                    PDPage pdfPage = new PDPage(PDRectangle.A4);
+                    pdf.addPage(pdfPage);
+                    boolean withQR = page == qrPage;
+                    if (kind == Kind.SCANNED) {
+                        writeScannedPage(pdf, pdfPage, withQR);
+                    } else {
+                        writeVectorPage(pdf, pdfPage, withQR);
+                    }
+                }
+                pdf.save(file.toFile());
+            }
+        }
+
+        /**
+         * Writes a page that is a single JPEG image, as from a document scanner.
+         *
+         * @param pdf    document
+         * @param page   page
+         * @param withQR whether to put the QR code on this page
+         * @throws IOException     if unable to create the image
+         * @throws WriterException if unable to encode the QR code
+         */
+        private void writeScannedPage(PDDocument pdf, PDPage page, boolean withQR) throws IOException, WriterException {
+            PDRectangle mediaBox = page.getMediaBox();
+            float scale = dpi / 72f;
+            int width = Math.round(mediaBox.getWidth() * scale);
+            int height = Math.round(mediaBox.getHeight() * scale);
+            BufferedImage scan = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+            Graphics2D graphics = scan.createGraphics();
+            try {
+                // Paper is never quite white.
+                int paper = 235 + random.nextInt(21);
+                graphics.setColor(new Color(paper, paper, paper));
+                graphics.fillRect(0, 0, width, height);
+                graphics.rotate(Math.toRadians(rotation), width / 2.0, height / 2.0);
+                graphics.setColor(Color.DARK_GRAY);
+                for (float line = 120; line < mediaBox.getHeight() - 72; line += 18) {
+                    float length = mediaBox.getWidth() - 144 - random.nextInt(200);
+                    if (!withQR || !isNearQR(72, line, length)) {
+                        graphics.fillRect(Math.round(72 * scale), Math.round(line * scale), Math.round(length * scale),
+                                Math.round(4 * scale));
+                    }
+                }
+                if (withQR) {
+                    int size = Math.round(sizePt * scale);
+                    graphics.drawImage(QrcodeImageWriter.createImage(qrCode, size, false), Math.round(x * scale),
+                            Math.round(y * scale), null);
+                }
+            } finally {
+                graphics.dispose();
+            }
+            addNoise(scan);
+            PDImageXObject image = JPEGFactory.createFromImage(pdf, scan, jpegQuality);
+            if (withQR) {
+                // As stored, with JPEG artifacts.
+                scannedQRPage = image.getImage();
+            }
+            try (PDPageContentStream content = new PDPageContentStream(pdf, page)) {
+                content.drawImage(image, 0, 0, mediaBox.getWidth(), mediaBox.getHeight());
+            }
+        }
+
+        /**
+         * Checks whether a line of 'text' would touch the QR code or its quiet zone. Real documents leave room around
+         * the QR code.
+         *
+         * @param left   left side of the line (pt)
+         * @param top    top of the line, from the top of the page (pt)
+         * @param length length of the line (pt)
+         * @return whether the line is too close to the QR code
+         */
+        private boolean isNearQR(float left, float top, float length) {
+            float quietZone = sizePt / 6f;
+            return left < x + sizePt + quietZone && left + length > x - quietZone && top < y + sizePt + quietZone
+                    && top + 4 > y - quietZone;
+        }
+
+        /**
+         * Flips random pixels to black or white (salt and pepper noise).
+         *
+         * @param scan page image
+         */
+        private void addNoise(BufferedImage scan) {
+            long flips = Math.round(scan.getWidth() * (long) scan.getHeight() * noise);
+            for (long i = 0; i < flips; i++) {
+                scan.getRaster().setSample(random.nextInt(scan.getWidth()), random.nextInt(scan.getHeight()), 0,
+                        random.nextBoolean() ? 0 : 255);
+            }
+        }
+
+        /**
+         * Writes a page with vector 'text', and the QR code as vector graphics or as a lossless image.
+         *
+         * @param pdf    document
+         * @param page   page
+         * @param withQR whether to put the QR code on this page
+         * @throws IOException     if unable to write the page
+         * @throws WriterException if unable to encode the QR code
+         */
+        private void writeVectorPage(PDDocument pdf, PDPage page, boolean withQR) throws IOException, WriterException {
+            PDRectangle mediaBox = page.getMediaBox();
+            try (PDPageContentStream content = new PDPageContentStream(pdf, page)) {
+                content.setNonStrokingColor(Color.DARK_GRAY);
+                for (float line = 120; line < mediaBox.getHeight() - 72; line += 18) {
+                    float length = mediaBox.getWidth() - 144 - random.nextInt(200);
+                    if (!withQR || !isNearQR(72, line - 4, length)) {
+                        content.addRect(72, mediaBox.getHeight() - line, length, 4);
+                    }
+                }
+                content.fill();
+                if (!withQR) {
+                    return;
+                }
+                // PDF coordinates start at the bottom left corner.
+                float bottom = mediaBox.getHeight() - y - sizePt;
+                if (kind == Kind.EMBEDDED) {
+                    PDImageXObject image = LosslessFactory.createFromImage(pdf,
+                            QrcodeImageWriter.createImage(qrCode, sizePt * 4, false));
+                    content.drawImage(image, x, bottom, sizePt, sizePt);
+                } else {
+                    BitMatrix modules = QrcodeImageWriter.encode(qrCode, 1);
+                    float module = (float) sizePt / modules.getWidth();
+                    content.setNonStrokingColor(Color.BLACK);
+                    for (int i = 0; i < modules.getWidth(); i++) {
+                        for (int j = 0; j < modules.getHeight(); j++) {
+                            if (modules.get(i, j)) {
+                                content.addRect(x + i * module, bottom + sizePt - (j + 1) * module, module, module);
+                            }
+                        }
+                    }
+                    content.fill();
+                }
+            }
+        }
+
+        /**
+         * Checks whether the QR code can be decoded at all, from the scanned page image or from a render of the page.
+         * Samples that even the scanner at its best settings cannot read say nothing about regressions.
+         *
+         * @param file path of the PDF file
+         * @throws IOException if unable to read the file
+         */
+        private void checkDecodable(Path file) throws IOException {
+            if (qrCode.isEmpty()) {
+                return;
+            }
+            DecodeChain decodeChain = DecodeChain.parse(DecodeChain.DEFAULT_CHAIN);
+            if (scannedQRPage != null && decodes(decodeChain, scannedQRPage)) {
+                decodable = true;
+                return;
+            }
+            try (PDDocument pdf = PDDocument.load(file.toFile())) {
+                BufferedImage render = new PDFRenderer(pdf).renderImageWithDPI(qrPage - 1, CHECK_DPI, ImageType.GRAY);
+                decodable = decodes(decodeChain, render);
+            }
+        }
+
+        /**
+         * Checks whether the right QR code is decoded from an image.
+         *
+         * @param decodeChain decode chain of the scanner
+         * @param image       image
+         * @return whether the QR code was decoded
+         */
+        private boolean decodes(DecodeChain decodeChain, BufferedImage image) {
+            try {
+                return qrCode.equals(decodeChain.decode(image).getQrCode());
+            } catch (NotFoundException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Describes the document for the manifest.
+         *
+         * @return manifest line
+         */
+        private String toManifestLine() {
+            return String.format(Locale.ROOT, "%s,%s,%d,%d,%s,%d,%.0f,%.0f,%d,%.4f,%.2f,%b", fileName, qrCode, qrPage,
+                    pageCount, kind, sizePt, x, y, dpi, noise, rotation, decodable);
+        }
+    }
+}
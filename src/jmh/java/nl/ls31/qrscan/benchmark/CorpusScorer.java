@@ -0,0 +1,164 @@
+package nl.ls31.qrscan.benchmark;
+
+import nl.ls31.qrscan.core.PageSelection;
+import nl.ls31.qrscan.core.ScanOptions;
+import nl.ls31.qrscan.core.ScanPipeline;
+import nl.ls31.qrscan.model.PdfScanResult;
+import org.tinylog.configuration.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Scans a corpus made by CorpusGenerator and scores the run against the ground truth manifest, for throughput (files
+ * and pages per second) and for accuracy (QR codes found, wrong, missed, and found in files without a QR code). The
+ * accuracy is also reported per kind of document. Files of which the manifest says the QR code is not decodable at all
+ * are counted as unreadable and left out of the accuracy, so the accuracy shows regressions of the scanner itself.
+ *
+ * <p>
+ * File attributes and the scan cache are not used, so every file is actually scanned and runs can be repeated.
+ * </p>
+ *
+ * <p>
+ * Usage: CorpusScorer &lt;corpus dir&gt; [pages, default "any"] [workers]
+ * </p>
+ *
+ * @author Lars Steggink
+ */
+public class CorpusScorer {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: CorpusScorer <corpus dir> [pages] [workers]");
+            System.exit(2);
+        }
+        // Logging every file would distort the throughput.
+        Configuration.set("writer1.level", "warn");
+        Path corpusDir = Paths.get(args[0]);
+        ScanOptions options = new ScanOptions();
+        options.setUseFileAttributes(false);
+        options.setWriteFileAttributes(false);
+        options.setPageSelection(PageSelection.parse(args.length > 1 ? args[1] : "any"));
+        if (args.length > 2) {
+            options.setWorkerCount(Integer.parseInt(args[2]));
+        }
+
+        Map<String, Expected> manifest = readManifest(corpusDir.resolve(CorpusGenerator.MANIFEST));
+        Map<String, PdfScanResult> results = new HashMap<>();
+        long start = System.nanoTime();
+        new ScanPipeline(options, (processed, total) -> {
+        }).run(corpusDir, (sequence, result) -> results.put(result.getInputFilePath().getFileName().toString(),
+                result));
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Map<String, Score> scores = new TreeMap<>();
+        Score total = new Score();
+        long pageCount = 0;
+        for (Map.Entry<String, Expected> entry : manifest.entrySet()) {
+            Expected expected = entry.getValue();
+            pageCount += expected.pageCount;
+            PdfScanResult result = results.get(entry.getKey());
+            Score score = scores.computeIfAbsent(expected.kind, kind -> new Score());
+            score.add(expected, result);
+            total.add(expected, result);
+        }
+
+        System.out.printf(Locale.ROOT, "Scanned %d files (%d pages) in %.1f s: %.1f files/s, %.1f pages/s, %d workers,"
+                        + " pages \"%s\".%n", manifest.size(), pageCount, seconds, manifest.size() / seconds,
+                pageCount / seconds, options.getWorkerCount(), options.getPageSelection());
+        System.out.println(Score.HEADER);
+        for (Map.Entry<String, Score> entry : scores.entrySet()) {
+            System.out.println(entry.getValue().toLine(entry.getKey()));
+        }
+        System.out.println(total.toLine("TOTAL"));
+    }
+
+    /**
+     * Reads the ground truth manifest.
+     *
+     * @param manifestFile manifest
+     * @return expected results by file name
+     * @throws IOException if unable to read the manifest
+     */
+    private static Map<String, Expected> readManifest(Path manifestFile) throws IOException {
+        Map<String, Expected> manifest = new TreeMap<>();
+        List<String> lines = Files.readAllLines(manifestFile);
+        for (String line : lines.subList(1, lines.size())) {
+            String[] fields = line.split(",", -1);
+            // Manifests of older corpora have no Decodable column.
+            boolean decodable = fields.length < 12 || Boolean.parseBoolean(fields[11]);
+            manifest.put(fields[0], new Expected(fields[1], Integer.parseInt(fields[3]), fields[4], decodable));
+        }
+        return manifest;
+    }
+
+    /**
+     * Ground truth of a single file.
+     */
+    private static class Expected {
+        private final String qrCode;
+        private final int pageCount;
+        private final String kind;
+        private final boolean decodable;
+
+        Expected(String qrCode, int pageCount, String kind, boolean decodable) {
+            this.qrCode = qrCode;
+            this.pageCount = pageCount;
+            this.kind = kind;
+            this.decodable = decodable;
+        }
+    }
+
+    /**
+     * Accuracy of a group of files.
+     */
+    private static class Score {
+        final static private String HEADER = String.format(Locale.ROOT, "%-10s %7s %7s %7s %7s %7s %10s %9s", "Kind",
+                "Files", "Correct", "Wrong", "Missed", "FalsePos", "Unreadable", "Accuracy");
+        private int files;
+        private int unreadable;
+        private int correct;
+        private int wrong;
+        private int missed;
+        private int falsePositives;
+
+        /**
+         * Scores a single file.
+         *
+         * @param expected ground truth
+         * @param result   scan result, or null if the file was not scanned at all
+         */
+        private void add(Expected expected, PdfScanResult result) {
+            files++;
+            boolean found = result != null && result.isQRCodeFound();
+            if (!expected.qrCode.isEmpty() && !expected.decodable) {
+                unreadable++;
+            } else if (expected.qrCode.isEmpty()) {
+                if (found) {
+                    falsePositives++;
+                } else {
+                    correct++;
+                }
+            } else if (!found) {
+                missed++;
+            } else if (expected.qrCode.equals(result.getQrCode())) {
+                correct++;
+            } else {
+                wrong++;
+            }
+        }
+
+        private String toLine(String kind) {
+            int scored = files - unreadable;
+            return String.format(Locale.ROOT, "%-10s %7d %7d %7d %7d %7d %10d %8.1f%%", kind, files, correct, wrong,
+                    missed, falsePositives, unreadable, scored == 0 ? 0 : 100.0 * correct / scored);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package nl.ls31.qrscan.benchmark;
+
+import nl.ls31.qrscan.core.QrcodeImageWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks creating QR code images, as done when creating images from a code file.
+ *
+ * @author Lars Steggink
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodeBenchmark {
+
+    @Param({"50", "200"})
+    public int size;
+
+    @Param({"true", "false"})
+    public boolean withAnnotation;
+
+    private Path outputDir;
+    private long imageCount;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws Exception {
+        outputDir = BenchmarkFixtures.createDirectory();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws Exception {
+        BenchmarkFixtures.delete(outputDir);
+    }
+
+    /**
+     * Encodes a QR code and writes it as a GIF file. Every invocation writes a new file, as existing files are never
+     * overwritten.
+     */
+    @Benchmark
+    public Path writeGIF() throws Exception {
+        Path imagePath = outputDir.resolve("code" + imageCount++ + ".gif");
+        QrcodeImageWriter.writeGIF(imagePath, BenchmarkFixtures.QR_CODE, size, withAnnotation);
+        return imagePath;
+    }
+}
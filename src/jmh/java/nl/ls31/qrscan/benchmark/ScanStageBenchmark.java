@@ -0,0 +1,164 @@
+package nl.ls31.qrscan.benchmark;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+import nl.ls31.qrscan.core.DecodeStep;
+import nl.ls31.qrscan.core.PdfDocumentSession;
+import nl.ls31.qrscan.core.PdfScanner;
+import nl.ls31.qrscan.core.ScanOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the stages of scanning a PDF file for a QR code, one at a time: parsing the document, rendering a page at
+ * a given DPI, binarizing the render, and decoding the QR code. The full scan of a document is measured as well (see
+ * WholeDocument), so the sum of the stages can be compared to the whole.
+ *
+ * @author Lars Steggink
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScanStageBenchmark {
+
+    @Param({"150", "200", "300"})
+    public int dpi;
+
+    private Path fixtureDir;
+    private Path pdf;
+    private PdfDocumentSession session;
+    private BufferedImage render;
+    private DecodeStep globalStep;
+    private DecodeStep hybridStep;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixtureDir = BenchmarkFixtures.createDirectory();
+        pdf = BenchmarkFixtures.writeScannedPdf(fixtureDir.resolve("scan.pdf"), 2);
+        session = new PdfDocumentSession(pdf);
+        render = session.renderPage(1, dpi);
+        globalStep = DecodeStep.parse("GLOBAL");
+        hybridStep = DecodeStep.parse("HYBRID");
+        if (!BenchmarkFixtures.QR_CODE.equals(globalStep.decode(render))) {
+            throw new IllegalStateException("Fixture cannot be decoded at " + dpi + " DPI.");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        session.close();
+        BenchmarkFixtures.delete(fixtureDir);
+    }
+
+    /**
+     * Parses the document and counts its pages.
+     */
+    @Benchmark
+    public int parse() throws Exception {
+        try (PdfDocumentSession parsed = new PdfDocumentSession(pdf)) {
+            return parsed.getNumberOfPages();
+        }
+    }
+
+    /**
+     * Renders the first page of an open document.
+     */
+    @Benchmark
+    public BufferedImage render() throws Exception {
+        return session.renderPage(1, dpi);
+    }
+
+    /**
+     * Binarizes the render with the global histogram binarizer (GLOBAL decode steps).
+     */
+    @Benchmark
+    public BitMatrix binarizeGlobal() throws NotFoundException {
+        return new BinaryBitmap(new GlobalHistogramBinarizer(new BufferedImageLuminanceSource(render)))
+                .getBlackMatrix();
+    }
+
+    /**
+     * Binarizes the render with the hybrid binarizer (HYBRID decode steps).
+     */
+    @Benchmark
+    public BitMatrix binarizeHybrid() throws NotFoundException {
+        return new BinaryBitmap(new HybridBinarizer(new BufferedImageLuminanceSource(render))).getBlackMatrix();
+    }
+
+    /**
+     * Decodes the QR code from the render with the global histogram binarizer (GLOBAL decode step, including
+     * binarization).
+     */
+    @Benchmark
+    public String decodeGlobal() throws NotFoundException {
+        return globalStep.decode(render);
+    }
+
+    /**
+     * Decodes the QR code from the render with the hybrid binarizer (HYBRID decode step, including binarization).
+     */
+    @Benchmark
+    public String decodeHybrid() throws NotFoundException {
+        return hybridStep.decode(render);
+    }
+
+    /**
+     * Benchmarks the full scan of the same document. It has its own state without the dpi parameter, as the scan
+     * chooses its own DPI settings, so it is measured once instead of once per DPI.
+     */
+    @State(Scope.Benchmark)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @Fork(1)
+    public static class WholeDocument {
+        private Path fixtureDir;
+        private Path pdf;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            fixtureDir = BenchmarkFixtures.createDirectory();
+            pdf = BenchmarkFixtures.writeScannedPdf(fixtureDir.resolve("scan.pdf"), 2);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            BenchmarkFixtures.delete(fixtureDir);
+        }
+
+        /**
+         * Scans the document from scratch, as the scan workers do: parse, try the embedded images and render if
+         * needed, decode. File attributes and the scan cache are not used.
+         */
+        @Benchmark
+        public String scanDocument() throws Exception {
+            ScanOptions options = new ScanOptions();
+            options.setUseFileAttributes(false);
+            options.setWriteFileAttributes(false);
+            return new PdfScanner(pdf).scanDocument(options);
+        }
+    }
+}
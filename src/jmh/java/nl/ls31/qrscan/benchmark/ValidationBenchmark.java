@@ -0,0 +1,40 @@
+package nl.ls31.qrscan.benchmark;
+
+import nl.ls31.qrscan.core.PdfScanner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks validating codes, which is done for every code file line, file attribute and decoded QR code.
+ *
+ * @author Lars Steggink
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationBenchmark {
+
+    /**
+     * A typical code, and a code with an illegal character at the end (the worst case for the pattern).
+     */
+    @Param({"BENCH_0001", "BENCH_0001 with an illegal character!"})
+    public String code;
+
+    @Benchmark
+    public boolean isValidQRCode() {
+        return PdfScanner.isValidQRCode(code);
+    }
+}
@@ -7,8 +7,11 @@ module qrscan {
     requires com.google.zxing.javase;
     requires org.tinylog.api;
     requires java.prefs;
+    requires java.management;
+    requires jdk.jfr;
 
     opens nl.ls31.qrscan.controller to javafx.fxml;
     opens nl.ls31.qrscan.model to javafx.base;
     exports nl.ls31.qrscan;
+    exports nl.ls31.qrscan.core to java.management;
 }
\ No newline at end of file
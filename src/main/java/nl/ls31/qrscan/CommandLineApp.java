@@ -0,0 +1,456 @@
+package nl.ls31.qrscan;
+
+import nl.ls31.qrscan.core.CsvLogStreamWriter;
+import nl.ls31.qrscan.core.DecodeChain;
+import nl.ls31.qrscan.core.DpiLadder;
+import nl.ls31.qrscan.core.FolderWatcher;
+import nl.ls31.qrscan.core.PageSelection;
+import nl.ls31.qrscan.core.PdfFileRenamer;
+import nl.ls31.qrscan.core.QrcodeImageCreator;
+import nl.ls31.qrscan.core.ScanCache;
+import nl.ls31.qrscan.core.ScanMetrics;
+import nl.ls31.qrscan.core.ScanOptions;
+import nl.ls31.qrscan.core.ScanPipeline;
+import nl.ls31.qrscan.core.ScanRegion;
+import nl.ls31.qrscan.model.PdfScanResult;
+import org.tinylog.Logger;
+import org.tinylog.configuration.Configuration;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Headless command line version of QRScan, for batch servers and scheduled jobs. It scans or renames PDF files, watches
+ * a hot folder, or creates QR code images, without starting JavaFX.
+ *
+ * <p>
+ * Results are streamed to standard output as CSV (the same format as the CSV log file) while scanning, and optionally
+ * to a CSV file as well. Log messages go to standard error. Options mirror the settings of the graphical version, but
+ * are never read from or stored in the user preferences. This class must not refer to any JavaFX class (nor to
+ * AppSettings), so short jobs start fast and run without a display.
+ * </p>
+ *
+ * <p>
+ * Exit codes: 0 if every file was handled successfully, 1 if some files had no QR code or could not be renamed (or
+ * some images could not be created), 2 for invalid arguments, and 3 if an input or output path could not be used.
+ * </p>
+ *
+ * @author Lars Steggink
+ */
+public class CommandLineApp {
+    final static public int EXIT_OK = 0;
+    final static public int EXIT_INCOMPLETE = 1;
+    final static public int EXIT_USAGE = 2;
+    final static public int EXIT_IO_ERROR = 3;
+    final static private String USAGE = String.join(System.lineSeparator(),
+            "Usage:",
+            "  qrscan scan <input dir> [scan options]",
+            "  qrscan rename <input dir> <output dir> [scan options]",
+            "  qrscan watch <input dir> <output dir> [scan options]",
+            "  qrscan images <code file> <output dir> [--size <px>] [--no-annotation]",
+            "",
+            "Scan options:",
+            "  --pages <pages>        pages to search for QR codes, e.g. \"1, last\" (default: 1)",
+            "  --workers <n>          number of files scanned at the same time",
+            "  --region <region>      " + regionNames() + " (default: FULL_PAGE)",
+            "  --dpi <order>          DPI settings to try, e.g. \"300,200\"",
+            "  --decode <steps>       decode steps to try (default: " + DecodeChain.DEFAULT_CHAIN + ")",
+            "  --no-use-attribute     do not read QR codes from file attributes",
+            "  --no-write-attribute   do not store QR codes in file attributes",
+            "  --limit-memory         keep memory use low, for very large PDF files",
+            "  --scan-cache           remember QR codes of scanned files by content",
+            "  --skip-duplicates      scan identical files only once",
+            "  --csv <file>           also write the results to a CSV file (not when watching)",
+            "  --verbose              log every file",
+            "",
+            "Exit codes: 0 all files handled, 1 some files without QR code or not handled, 2 invalid arguments,",
+            "3 unable to use an input or output path.");
+
+    /**
+     * Runs the command line version and exits with its status code.
+     *
+     * @param args command line arguments
+     */
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * Runs the command line version.
+     *
+     * @param args command line arguments
+     * @return exit code
+     */
+    public static int run(String[] args) {
+        List<String> arguments = new ArrayList<>(List.of(args));
+        configureLogging(arguments.remove("--verbose"));
+        if (arguments.isEmpty() || arguments.contains("--help")) {
+            System.err.println(USAGE);
+            return arguments.isEmpty() ? EXIT_USAGE : EXIT_OK;
+        }
+        try {
+            String command = arguments.remove(0);
+            switch (command) {
+                case "scan":
+                    return scan(arguments, false);
+                case "rename":
+                    return scan(arguments, true);
+                case "watch":
+                    return watch(arguments);
+                case "images":
+                    return createImages(arguments);
+                default:
+                    throw new IllegalArgumentException("Unknown command: " + command + ".");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return EXIT_USAGE;
+        }
+    }
+
+    /**
+     * Sends all log messages to standard error, so standard output only contains results. Must be called before
+     * anything is logged.
+     *
+     * @param verbose whether to log every file
+     */
+    private static void configureLogging(boolean verbose) {
+        Configuration.set("writer1.stream", "err");
+        Configuration.set("writer1.level", verbose ? "trace" : "warn");
+    }
+
+    /**
+     * Scans, and optionally renames, all PDF files in the input directory.
+     *
+     * @param arguments arguments after the command
+     * @param rename    whether to rename the files
+     * @return exit code
+     */
+    private static int scan(List<String> arguments, boolean rename) {
+        ScanArguments scanArguments = parseScanArguments(arguments);
+        ScanOptions options = scanArguments.options;
+        Path csvFile = scanArguments.csvFile;
+        List<Path> paths = scanArguments.paths;
+        if (paths.size() != (rename ? 2 : 1)) {
+            throw new IllegalArgumentException(rename ? "Expected an input and an output directory."
+                    : "Expected an input directory.");
+        }
+        Path inputDir = paths.get(0);
+        if (!Files.isDirectory(inputDir)) {
+            Logger.error("Input directory " + inputDir + " does not exist.");
+            return EXIT_IO_ERROR;
+        }
+        PdfFileRenamer renamer = null;
+        if (rename) {
+            renamer = new PdfFileRenamer(paths.get(1));
+            try {
+                renamer.prepareOutputDirectory();
+            } catch (IOException e) {
+                Logger.error(e, "Unable to create or use output path.");
+                return EXIT_IO_ERROR;
+            }
+        }
+
+        try (CsvLogStreamWriter out = new CsvLogStreamWriter(new OutputStreamWriter(System.out));
+             CsvLogStreamWriter log = csvFile == null ? null : new CsvLogStreamWriter(csvFile)) {
+            return scan(inputDir, options, renamer, out, log);
+        } catch (IOException e) {
+            Logger.error(e, "Unable to write results.");
+            return EXIT_IO_ERROR;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Logger.warn("Scan was interrupted.");
+            return EXIT_INCOMPLETE;
+        }
+    }
+
+    /**
+     * Watches the input directory until the process is stopped, and scans and renames every PDF file that arrives.
+     * Results are logged in the output directory, and written to standard output.
+     *
+     * @param arguments arguments after the command
+     * @return exit code
+     */
+    private static int watch(List<String> arguments) {
+        ScanArguments scanArguments = parseScanArguments(arguments);
+        if (scanArguments.csvFile != null) {
+            throw new IllegalArgumentException("Option --csv is not supported when watching; results are logged in"
+                    + " the output directory.");
+        }
+        if (scanArguments.paths.size() != 2) {
+            throw new IllegalArgumentException("Expected an input and an output directory.");
+        }
+        Path inputDir = scanArguments.paths.get(0);
+        if (!Files.isDirectory(inputDir)) {
+            Logger.error("Input directory " + inputDir + " does not exist.");
+            return EXIT_IO_ERROR;
+        }
+
+        try (CsvLogStreamWriter out = new CsvLogStreamWriter(new OutputStreamWriter(System.out))) {
+            FolderWatcher watcher = new FolderWatcher(inputDir, scanArguments.paths.get(1), scanArguments.options,
+                    result -> {
+                        try {
+                            out.write(result);
+                        } catch (IOException e) {
+                            Logger.error(e, "Unable to write result.");
+                        }
+                    });
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    watcher.close();
+                } catch (IOException e) {
+                    Logger.error(e, "Unable to stop watching.");
+                }
+            }));
+            watcher.run();
+            return EXIT_OK;
+        } catch (IOException e) {
+            Logger.error(e, "Unable to watch input directory or to use output path.");
+            return EXIT_IO_ERROR;
+        }
+    }
+
+    /**
+     * Parses the scan options, and opens the scan cache if requested.
+     *
+     * @param arguments arguments after the command
+     * @return parsed arguments
+     * @throws IllegalArgumentException if an option is unknown or invalid
+     */
+    private static ScanArguments parseScanArguments(List<String> arguments) {
+        ScanArguments scanArguments = new ScanArguments();
+        ScanOptions options = scanArguments.options;
+        boolean useScanCache = false;
+        Iterator<String> it = arguments.iterator();
+        while (it.hasNext()) {
+            String argument = it.next();
+            switch (argument) {
+                case "--pages":
+                    options.setPageSelection(PageSelection.parse(value(argument, it)));
+                    break;
+                case "--workers":
+                    options.setWorkerCount(intValue(argument, it));
+                    break;
+                case "--region":
+                    options.setScanRegion(ScanRegion.valueOf(value(argument, it)));
+                    break;
+                case "--dpi":
+                    options.setDpiLadder(DpiLadder.parse(value(argument, it)));
+                    break;
+                case "--decode":
+                    options.setDecodeChain(DecodeChain.parse(value(argument, it)));
+                    break;
+                case "--no-use-attribute":
+                    options.setUseFileAttributes(false);
+                    break;
+                case "--no-write-attribute":
+                    options.setWriteFileAttributes(false);
+                    break;
+                case "--limit-memory":
+                    options.setMemoryLimited(true);
+                    break;
+                case "--scan-cache":
+                    useScanCache = true;
+                    break;
+                case "--skip-duplicates":
+                    options.setSkipDuplicates(true);
+                    break;
+                case "--csv":
+                    scanArguments.csvFile = Paths.get(value(argument, it));
+                    break;
+                default:
+                    scanArguments.paths.add(path(argument));
+            }
+        }
+        if (useScanCache) {
+            try {
+                options.setScanCache(ScanCache.openDefault());
+            } catch (IOException e) {
+                Logger.warn(e, "Unable to use the scan cache.");
+            }
+        }
+        return scanArguments;
+    }
+
+    /**
+     * Scans, and optionally renames, all PDF files in the input directory, writing every result as soon as it is known.
+     *
+     * @param inputDir directory with PDF files
+     * @param options  scan options
+     * @param renamer  renamer, or null if files should not be renamed
+     * @param out      CSV writer for standard output
+     * @param log      CSV writer for the log file, or null
+     * @return exit code
+     * @throws IOException          if unable to write results
+     * @throws InterruptedException if interrupted while scanning
+     */
+    private static int scan(Path inputDir, ScanOptions options, PdfFileRenamer renamer, CsvLogStreamWriter out,
+                            CsvLogStreamWriter log) throws IOException, InterruptedException {
+        int[] incomplete = new int[1];
+        IOException[] writeFailure = new IOException[1];
+        ScanPipeline pipeline = new ScanPipeline(options, (processed, total) -> {
+        });
+        pipeline.setRenamer(renamer);
+        ScanMetrics metrics = options.getMetrics();
+        metrics.register();
+        long fileCount;
+        try {
+            fileCount = pipeline.run(inputDir, (sequence, result) -> {
+                boolean duplicate = result.getQrCodeScanStatus() == PdfScanResult.ResultStatus.DUPLICATE;
+                if (!result.isQRCodeFound() && !(duplicate && !result.getQrCode().isEmpty())) {
+                    incomplete[0]++;
+                } else if (renamer != null && result.isQRCodeFound()) {
+                    try {
+                        renamer.rename(result);
+                    } catch (IOException e) {
+                        Logger.error(e, "Unable to rename " + result.getInputFilePath().getFileName() + ".");
+                        incomplete[0]++;
+                    }
+                }
+                try {
+                    out.write(result);
+                    if (log != null) {
+                        log.write(result);
+                    }
+                } catch (IOException e) {
+                    writeFailure[0] = e;
+                }
+            });
+        } finally {
+            metrics.unregister();
+        }
+        Logger.info(metrics.getSummary());
+        if (writeFailure[0] != null) {
+            throw writeFailure[0];
+        }
+        System.err.println("Handled " + fileCount + " files: " + (fileCount - incomplete[0]) + " successful, "
+                + incomplete[0] + " unsuccessful, " + pipeline.getDuplicateCount() + " duplicates.");
+        return incomplete[0] == 0 ? EXIT_OK : EXIT_INCOMPLETE;
+    }
+
+    /**
+     * Creates QR code images for all codes in a code file. The paths of the created images are written to standard
+     * output.
+     *
+     * @param arguments arguments after the command
+     * @return exit code
+     */
+    private static int createImages(List<String> arguments) {
+        int size = 50;
+        boolean withText = true;
+        List<Path> paths = new ArrayList<>();
+        Iterator<String> it = arguments.iterator();
+        while (it.hasNext()) {
+            String argument = it.next();
+            switch (argument) {
+                case "--size":
+                    size = intValue(argument, it);
+                    break;
+                case "--no-annotation":
+                    withText = false;
+                    break;
+                default:
+                    paths.add(path(argument));
+            }
+        }
+        if (paths.size() != 2) {
+            throw new IllegalArgumentException("Expected a code file and an output directory.");
+        }
+
+        Set<String> codeList;
+        QrcodeImageCreator creator = new QrcodeImageCreator(paths.get(1), size, withText);
+        try {
+            codeList = QrcodeImageCreator.readQRCodesFromFile(paths.get(0));
+            creator.createOutputDirectory();
+        } catch (IOException e) {
+            Logger.error(e, "Unable to read code file or to create output path.");
+            return EXIT_IO_ERROR;
+        }
+        creator.createImages(codeList, current -> {
+        }).forEach(System.out::println);
+        System.err.println("Created " + creator.getSuccessCount() + " of " + codeList.size() + " images; skipped "
+                + creator.getIllegalCount() + " codes with illegal characters; unable to create "
+                + creator.getFailedCount() + " images.");
+        return creator.getFailedCount() + creator.getIllegalCount() == 0 ? EXIT_OK : EXIT_INCOMPLETE;
+    }
+
+    /**
+     * Takes the value of an option.
+     *
+     * @param option option name
+     * @param it     remaining arguments
+     * @return value
+     * @throws IllegalArgumentException if the value is missing
+     */
+    private static String value(String option, Iterator<String> it) {
+        if (!it.hasNext()) {
+            throw new IllegalArgumentException("Missing value for " + option + ".");
+        }
+        return it.next();
+    }
+
+    /**
+     * Takes the positive integer value of an option.
+     *
+     * @param option option name
+     * @param it     remaining arguments
+     * @return value
+     * @throws IllegalArgumentException if the value is missing or invalid
+     */
+    private static int intValue(String option, Iterator<String> it) {
+        String value = value(option, it);
+        try {
+            int number = Integer.parseInt(value);
+            if (number < 1) {
+                throw new NumberFormatException();
+            }
+            return number;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + option + ": " + value + ".");
+        }
+    }
+
+    /**
+     * Takes a path argument.
+     *
+     * @param argument argument
+     * @return path
+     * @throws IllegalArgumentException if the argument is an unknown option
+     */
+    private static Path path(String argument) {
+        if (argument.startsWith("--")) {
+            throw new IllegalArgumentException("Unknown option: " + argument + ".");
+        }
+        return Paths.get(argument);
+    }
+
+    /**
+     * Lists the names of all scan regions.
+     *
+     * @return comma separated names
+     */
+    private static String regionNames() {
+        List<String> names = new ArrayList<>();
+        for (ScanRegion region : ScanRegion.values()) {
+            names.add(region.name());
+        }
+        return String.join(", ", names);
+    }
+
+    /**
+     * Parsed arguments of the scan, rename and watch commands.
+     */
+    private static class ScanArguments {
+        private final ScanOptions options = new ScanOptions();
+        private final List<Path> paths = new ArrayList<>();
+        private Path csvFile;
+    }
+}
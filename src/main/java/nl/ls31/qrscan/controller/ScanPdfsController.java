@@ -1,20 +1,24 @@
 package nl.ls31.qrscan.controller;
 
-import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.stage.DirectoryChooser;
 import nl.ls31.qrscan.MainApp;
+import nl.ls31.qrscan.core.PageSelection;
 import nl.ls31.qrscan.core.RenamePdfsTask;
+import nl.ls31.qrscan.core.ScanCache;
+import nl.ls31.qrscan.core.ScanOptions;
 import nl.ls31.qrscan.core.ScanPdfsTask;
+import nl.ls31.qrscan.core.ScanRegion;
 import nl.ls31.qrscan.model.AppSettings;
 import nl.ls31.qrscan.model.PdfScanResult;
-import nl.ls31.qrscan.view.ProgressDialog;
+import nl.ls31.qrscan.view.FxBatchQueue;
 import nl.ls31.qrscan.view.ResultsDialog;
+import org.tinylog.Logger;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Path;
-import java.util.List;
 
 /**
  * Controller for the main function of the program: scanning PDF files for QR codes and rename them accordingly.
@@ -31,7 +35,11 @@ public class ScanPdfsController {
     @FXML
     private Button scanButton;
     @FXML
-    private Spinner<Integer> qrPageSpinner;
+    private TextField qrPagesTextField;
+    @FXML
+    private Spinner<Integer> workersSpinner;
+    @FXML
+    private ChoiceBox<ScanRegion> regionChoiceBox;
     @FXML
     private CheckBox useFileAttributeCheckBox;
     @FXML
@@ -39,6 +47,12 @@ public class ScanPdfsController {
     @FXML
     private CheckBox openLogFileCheckBox;
     @FXML
+    private CheckBox limitMemoryCheckBox;
+    @FXML
+    private CheckBox useScanCacheCheckBox;
+    @FXML
+    private CheckBox skipDuplicatesCheckBox;
+    @FXML
     private CheckBox renameCheckBox;
     @FXML
     private TextField targetDirTextField;
@@ -56,6 +70,14 @@ public class ScanPdfsController {
         this.mainApp = mainApp;
     }
 
+    /**
+     * Initializes the controls that cannot be fully defined in FXML.
+     */
+    @FXML
+    private void initialize() {
+        regionChoiceBox.getItems().setAll(ScanRegion.values());
+    }
+
     /**
      * Update all control states using the model as reference.
      */
@@ -67,7 +89,12 @@ public class ScanPdfsController {
         renameCheckBox.setSelected(mainApp.getAppSettings().getWithFileRenaming());
         toggleRenaming();
         openLogFileCheckBox.setSelected(mainApp.getAppSettings().getOpenLogFile());
-        qrPageSpinner.getValueFactory().setValue(mainApp.getAppSettings().getQRPage());
+        limitMemoryCheckBox.setSelected(mainApp.getAppSettings().getLimitMemory());
+        useScanCacheCheckBox.setSelected(mainApp.getAppSettings().getUseScanCache());
+        skipDuplicatesCheckBox.setSelected(mainApp.getAppSettings().getSkipDuplicates());
+        qrPagesTextField.setText(mainApp.getAppSettings().getPageSelection().toString());
+        workersSpinner.getValueFactory().setValue(mainApp.getAppSettings().getScanWorkers());
+        regionChoiceBox.setValue(mainApp.getAppSettings().getScanRegion());
     }
 
     /**
@@ -100,6 +127,19 @@ public class ScanPdfsController {
         }
     }
 
+    /**
+     * Handles edits to the page selection field, checking for validity.
+     */
+    @FXML
+    private void handleQrPagesFieldEdit() {
+        try {
+            PageSelection.parse(qrPagesTextField.getText());
+            qrPagesTextField.setStyle("-fx-border-color: green; -fx-border-width: 2px ;");
+        } catch (IllegalArgumentException e) {
+            qrPagesTextField.setStyle("-fx-border-color: red; -fx-border-width: 2px ;");
+        }
+    }
+
     /**
      * Handles clicks to the check box regarding usage of existing file attributes with the QR code.
      */
@@ -117,6 +157,16 @@ public class ScanPdfsController {
         mainApp.getAppSettings().setWriteFileAttribute(writeFileAttributeCheckBox.isSelected());
     }
 
+    /**
+     * Handles changes to the choice box regarding the region of the page that is scanned.
+     */
+    @FXML
+    private void handleRegionChoiceBox() {
+        if (regionChoiceBox.getValue() != null) {
+            mainApp.getAppSettings().setScanRegion(regionChoiceBox.getValue());
+        }
+    }
+
     /**
      * Handles clicks to the check box regarding opening the log file.
      */
@@ -125,6 +175,30 @@ public class ScanPdfsController {
         mainApp.getAppSettings().setOpenLogFile(openLogFileCheckBox.isSelected());
     }
 
+    /**
+     * Handles clicks to the check box regarding limiting memory use.
+     */
+    @FXML
+    private void handleLimitMemoryCheckBox() {
+        mainApp.getAppSettings().setLimitMemory(limitMemoryCheckBox.isSelected());
+    }
+
+    /**
+     * Handles clicks to the check box regarding the scan cache.
+     */
+    @FXML
+    private void handleUseScanCacheCheckBox() {
+        mainApp.getAppSettings().setUseScanCache(useScanCacheCheckBox.isSelected());
+    }
+
+    /**
+     * Handles clicks to the check box regarding duplicate files.
+     */
+    @FXML
+    private void handleSkipDuplicatesCheckBox() {
+        mainApp.getAppSettings().setSkipDuplicates(skipDuplicatesCheckBox.isSelected());
+    }
+
     /**
      * Handles clicks to the check box regarding renaming of the PDF files after QR codes have been extracted.
      */
@@ -156,37 +230,69 @@ public class ScanPdfsController {
     private void handleScanButton() {
         AppSettings appSettings = mainApp.getAppSettings();
 
-        // Spinner has no nice listener, update value first.
-        appSettings.setQRPage(qrPageSpinner.getValue());
+        // Text fields and spinners have no nice listener, update values first.
+        try {
+            appSettings.setPageSelection(PageSelection.parse(qrPagesTextField.getText()));
+        } catch (IllegalArgumentException e) {
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Invalid pages");
+            alert.setHeaderText("Invalid pages");
+            alert.setContentText("Enter page numbers or ranges separated by commas, e.g. 1, last or 1-3, or any.");
+            alert.showAndWait();
+            return;
+        }
+        appSettings.setScanWorkers(workersSpinner.getValue());
 
         Path inputDir = appSettings.getInputDirectory();
-        int qrPage = appSettings.getQRPage();
-        boolean useFileAttributes = appSettings.getUseFileAttribute();
-        boolean writeFileAttributes = appSettings.getWriteFileAttribute();
+        ScanOptions options = new ScanOptions();
+        options.setPageSelection(appSettings.getPageSelection());
+        options.setUseFileAttributes(appSettings.getUseFileAttribute());
+        options.setWriteFileAttributes(appSettings.getWriteFileAttribute());
+        options.setWorkerCount(appSettings.getScanWorkers());
+        options.setScanRegion(appSettings.getScanRegion());
+        options.setDpiLadder(appSettings.getDpiProfile());
+        options.setDecodeChain(appSettings.getDecodeChain());
+        options.setMemoryLimited(appSettings.getLimitMemory());
+        options.setSkipDuplicates(appSettings.getSkipDuplicates());
+        if (appSettings.getUseScanCache()) {
+            try {
+                options.setScanCache(ScanCache.openDefault());
+            } catch (IOException e) {
+                Logger.warn(e, "Unable to open scan cache, continuing without.");
+            }
+        }
         boolean openLogFile = appSettings.getOpenLogFile();
 
-        Task<List<PdfScanResult>> task;
-        if (appSettings.getWithFileRenaming()) {
+        boolean renaming = appSettings.getWithFileRenaming();
+        ScanPdfsTask task;
+        if (renaming) {
             Path targetDir = appSettings.getTargetDirectory();
-            task = new RenamePdfsTask(inputDir, targetDir, qrPage, useFileAttributes, writeFileAttributes, openLogFile);
+            task = new RenamePdfsTask(inputDir, targetDir, options, openLogFile);
         } else {
-            task = new ScanPdfsTask(inputDir, qrPage, useFileAttributes, writeFileAttributes, openLogFile);
+            task = new ScanPdfsTask(inputDir, options, openLogFile);
         }
 
-        ProgressDialog pDialog = new ProgressDialog("Processing...", task.progressProperty());
-        pDialog.show();
+        // Results are shown while they come in, in batches, so the application thread keeps up with fast scans.
+        ResultsDialog rDialog = new ResultsDialog(task, renaming);
+        FxBatchQueue<PdfScanResult> liveResults = new FxBatchQueue<>(rDialog::addResults);
+        task.setResultListener(liveResults::add);
+        rDialog.show();
         scanButton.setDisable(true);
 
         task.setOnSucceeded(event -> {
-            pDialog.close();
+            liveResults.flush();
             scanButton.setDisable(false);
-            ResultsDialog rDialog = new ResultsDialog(
-                    task.getValue(),
-                    task instanceof RenamePdfsTask,
-                    task.getMessage());
-            rDialog.show();
+            // Start the next run with the DPI order that worked best in this run.
+            appSettings.setDpiProfile(options.getDpiLadder());
+            rDialog.finish(task.getMessage());
             // TODO Move code to create CSV log file here.
         });
+        task.setOnFailed(event -> {
+            liveResults.flush();
+            scanButton.setDisable(false);
+            Logger.error(task.getException(), "Scan failed.");
+            rDialog.finish("Scan failed: " + task.getException().getMessage());
+        });
 
         new Thread(task).start();
     }
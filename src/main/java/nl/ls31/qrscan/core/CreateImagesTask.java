@@ -1,13 +1,10 @@
 package nl.ls31.qrscan.core;
 
-import com.google.zxing.WriterException;
 import javafx.concurrent.Task;
 import org.tinylog.Logger;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -58,99 +55,24 @@ public class CreateImagesTask extends Task<List<Path>> {
                 + outputDir.getFileName().toString() + LSEP + "  Size (px):        " + size + LSEP
                 + "  Annotation:       " + withText);
 
-        Set<String> codeList = readQRCodesFromFile(inputFile);
-        createOutputDirectory(outputDir);
-        return createImages(codeList);
-    }
-
-    /**
-     * Create images from a list of codes.
-     *
-     * @param codeList list of codes
-     * @return list of image paths
-     */
-    private List<Path> createImages(Set<String> codeList) {
-        int current = 0;
-        int success = 0;
-        int failed = 0;
-        int illegal = 0;
-        final int allCodes = codeList.size();
-
-        List<Path> imageList = new ArrayList<>();
-        for (String code : codeList) {
-            updateProgress(++current, allCodes);
-            if (!PdfScanner.isValidQRCode(code)) {
-                Logger.warn("Skipped code " + code + " with illegal characters. ");
-                illegal++;
-                continue;
-            }
-
-            try {
-                imageList.add(createImage(code, outputDir));
-                success++;
-            } catch (WriterException e) {
-                Logger.error(e, "Unable to encode \"" + code + "\". ");
-                failed++;
-            } catch (IOException e) {
-                Logger.error(e, "Unable to save file for code \"" + code + "\". ");
-                failed++;
-            }
-        }
-
-        String summaryMessage = "Summary for " + allCodes + " codes: successful: " + success + " codes; skipped (illegal characters): " + illegal + " codes; unable to create image: " + failed + " codes. ";
-        Logger.info(summaryMessage);
-        updateMessage(summaryMessage);
-        return imageList;
-    }
-
-    /**
-     * Creates output directory if needed.
-     *
-     * @param outputDir output directory
-     */
-    private void createOutputDirectory(Path outputDir) {
-        if (!Files.exists(outputDir)) {
-            try {
-                Files.createDirectory(outputDir);
-                Logger.info("Output directory did not exist and has been created.");
-            } catch (IOException e) {
-                Logger.error(e, "Unable to create or use output path.");
-            }
-        }
-    }
-
-    /**
-     * Reads the list with QR codes from the code text file.
-     *
-     * @param codeFile the code text file
-     * @return code list
-     */
-    private Set<String> readQRCodesFromFile(Path codeFile) {
         Set<String> codeList = new HashSet<>();
         try {
-            codeList.addAll(Files.readAllLines(codeFile));
+            codeList = QrcodeImageCreator.readQRCodesFromFile(inputFile);
         } catch (IOException e) {
             Logger.error(e, "Unable to read code file.");
         }
-        if (codeList.isEmpty()) {
-            Logger.warn("The code file seems empty.");
+        QrcodeImageCreator creator = new QrcodeImageCreator(outputDir, size, withText);
+        try {
+            creator.createOutputDirectory();
+        } catch (IOException e) {
+            Logger.error(e, "Unable to create or use output path.");
         }
-        return codeList;
-    }
+        final int allCodes = codeList.size();
+        List<Path> imageList = creator.createImages(codeList, current -> updateProgress(current, allCodes));
 
-    /**
-     * Creates a single image file.
-     *
-     * @param code      code for QR code
-     * @param outputDir output directory
-     * @return path to created image file
-     * @throws WriterException if unable to encode the QR code to an image
-     * @throws IOException     if unable to save the image file
-     */
-    private Path createImage(String code, Path outputDir)
-            throws WriterException, IOException {
-        Path imagePath = outputDir.resolve(code + ".gif");
-        QrcodeImageWriter.writeGIF(imagePath, code, size, withText);
-        return imagePath;
+        String summaryMessage = "Summary for " + allCodes + " codes: successful: " + creator.getSuccessCount() + " codes; skipped (illegal characters): " + creator.getIllegalCount() + " codes; unable to create image: " + creator.getFailedCount() + " codes. ";
+        Logger.info(summaryMessage);
+        updateMessage(summaryMessage);
+        return imageList;
     }
 }
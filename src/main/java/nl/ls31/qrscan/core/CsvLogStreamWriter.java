@@ -0,0 +1,136 @@
+package nl.ls31.qrscan.core;
+
+import nl.ls31.qrscan.model.PdfFileInfo;
+import nl.ls31.qrscan.model.PdfScanResult;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a CSV file with a log of the scanned or renamed PDF files with QR codes, one result at a time.
+ *
+ * <p>
+ * Every result is appended and flushed as soon as it is written, so the log never holds a copy of all results in
+ * memory and a crash halfway a large run still leaves a log of the files handled so far. Text fields are always quoted
+ * and quotes within them are doubled, so file names with commas, quotes or line breaks are logged correctly.
+ * </p>
+ *
+ * @author Lars Steggink
+ */
+public class CsvLogStreamWriter implements Closeable {
+
+    final static String SEP = ",";
+    final static String QUOTE = "\"";
+    final static String LSEP = System.lineSeparator();
+    private final BufferedWriter logOut;
+
+    /**
+     * Creates the CSV file and writes the header.
+     *
+     * @param logFilePath path where the CSV file should be created
+     * @throws IOException if unable to create the log file
+     */
+    public CsvLogStreamWriter(Path logFilePath) throws IOException {
+        this(Files.newBufferedWriter(logFilePath));
+    }
+
+    /**
+     * Writes the header to a stream, e.g. standard output. Closing the log also closes the stream.
+     *
+     * @param out stream to write the CSV to
+     * @throws IOException if unable to write to the stream
+     */
+    public CsvLogStreamWriter(Writer out) throws IOException {
+        this(out instanceof BufferedWriter ? (BufferedWriter) out : new BufferedWriter(out), true);
+    }
+
+    private CsvLogStreamWriter(BufferedWriter logOut, boolean writeHeader) throws IOException {
+        this.logOut = logOut;
+        if (!writeHeader) {
+            return;
+        }
+        try {
+            logOut.write("InputPath" + SEP + "RenamedPath" + SEP + "FileCreated" + SEP + "PageCount" + SEP
+                    + "QRCodeFound" + SEP + "QRCodePage" + SEP + "QRcode" + LSEP);
+            logOut.flush();
+        } catch (IOException e) {
+            logOut.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens an existing CSV file to append results to, or creates it (with a header) if it does not exist yet.
+     *
+     * @param logFilePath path of the CSV file
+     * @return log writer
+     * @throws IOException if unable to open or create the log file
+     */
+    public static CsvLogStreamWriter openForAppend(Path logFilePath) throws IOException {
+        boolean exists = Files.exists(logFilePath) && Files.size(logFilePath) > 0;
+        BufferedWriter out = Files.newBufferedWriter(logFilePath, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+        return new CsvLogStreamWriter(out, !exists);
+    }
+
+    /**
+     * Quotes a text field, doubling any quotes within it.
+     *
+     * @param value text
+     * @return quoted text
+     */
+    static String quote(String value) {
+        return QUOTE + value.replace(QUOTE, QUOTE + QUOTE) + QUOTE;
+    }
+
+    /**
+     * Appends a single result to the log and flushes it to disk.
+     *
+     * @param result result of scanning and renaming
+     * @throws IOException if unable to write to the log file
+     */
+    public synchronized void write(PdfScanResult result) throws IOException {
+        append(result);
+        logOut.flush();
+    }
+
+    /**
+     * Appends a single result to the log, without flushing it yet.
+     *
+     * @param result result of scanning and renaming
+     * @throws IOException if unable to write to the log file
+     */
+    synchronized void append(PdfScanResult result) throws IOException {
+        StringBuilder line = new StringBuilder();
+        line.append(quote(result.getInputFilePath().toAbsolutePath().toString())).append(SEP);
+        if (result.isFileRenamed()) {
+            line.append(quote(result.getOutputFilePath().toAbsolutePath().toString()));
+        }
+        line.append(SEP);
+        line.append(quote(result.getFileCreationTime())).append(SEP);
+        if (result.getPageCount() != PdfFileInfo.UNKNOWN_PAGE_COUNT) {
+            // Left empty if the document was not parsed, e.g. when the QR code was read from a file attribute.
+            line.append(result.getPageCount());
+        }
+        line.append(SEP);
+        line.append(quote(result.getQrCodeScanStatus().toString())).append(SEP);
+        line.append(result.getQrCodePage()).append(SEP);
+        line.append(quote(result.getQrCode())).append(LSEP);
+        logOut.write(line.toString());
+    }
+
+    /**
+     * Closes the log file.
+     *
+     * @throws IOException if unable to close the log file
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        logOut.close();
+    }
+}
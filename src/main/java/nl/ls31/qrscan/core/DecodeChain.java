@@ -0,0 +1,155 @@
+package nl.ls31.qrscan.core;
+
+import com.google.zxing.NotFoundException;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Collectors;
+
+/**
+ * An ordered chain of decode steps. The steps should be ordered from cheap to expensive: an expensive step is only
+ * tried on an image if all cheaper steps failed.
+ *
+ * <p>
+ * The chain counts how often each step succeeded, so the chain can be tuned. This class is thread-safe; a single chain
+ * is shared by all files of a scan run.
+ * </p>
+ *
+ * @author Lars Steggink
+ */
+public class DecodeChain {
+    /**
+     * Default chain: plain fast decoding first, the former 'hybrid, try harder' approach last.
+     */
+    final static public String DEFAULT_CHAIN = "GLOBAL, HYBRID, HYBRID+TRY_HARDER";
+    private final List<DecodeStep> steps;
+    private final AtomicLongArray successes;
+
+    /**
+     * An ordered chain of decode steps.
+     *
+     * @param steps decode steps, from cheap to expensive
+     * @throws IllegalArgumentException if there are no steps
+     */
+    public DecodeChain(List<DecodeStep> steps) {
+        if (steps.isEmpty()) {
+            throw new IllegalArgumentException("No decode steps.");
+        }
+        this.steps = Collections.unmodifiableList(new ArrayList<>(steps));
+        this.successes = new AtomicLongArray(steps.size());
+    }
+
+    /**
+     * Parses a chain, e.g. "GLOBAL, HYBRID, HYBRID+TRY_HARDER".
+     *
+     * @param chain comma separated decode steps
+     * @return chain
+     * @throws IllegalArgumentException if a step is invalid
+     */
+    public static DecodeChain parse(String chain) {
+        return new DecodeChain(Arrays.stream(chain.split(","))
+                .filter(step -> !step.isBlank())
+                .map(DecodeStep::parse)
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Decodes a QR code from an image, trying the steps in order until one succeeds.
+     *
+     * @param image image to decode
+     * @return the QR code and the step that decoded it
+     * @throws NotFoundException if all steps failed
+     */
+    public DecodeResult decode(BufferedImage image) throws NotFoundException {
+        return decode(image, null);
+    }
+
+    /**
+     * Decodes a QR code from an image, trying the steps in order until one succeeds. The time spent binarizing and
+     * decoding is recorded.
+     *
+     * @param image   image to decode
+     * @param metrics metrics to record the stages in, or null if not recorded
+     * @return the QR code and the step that decoded it
+     * @throws NotFoundException if all steps failed
+     */
+    public DecodeResult decode(BufferedImage image, ScanMetrics metrics) throws NotFoundException {
+        for (int i = 0; i < steps.size(); i++) {
+            try {
+                String qrCode = steps.get(i).decode(image, metrics);
+                successes.incrementAndGet(i);
+                return new DecodeResult(qrCode, steps.get(i));
+            } catch (NotFoundException e) {
+                // Escalate to the next, more expensive step.
+            }
+        }
+        throw NotFoundException.getNotFoundInstance();
+    }
+
+    /**
+     * Gets the steps.
+     *
+     * @return decode steps, in order
+     */
+    public List<DecodeStep> getSteps() {
+        return steps;
+    }
+
+    /**
+     * Gets a summary of how often each step succeeded, e.g. "GLOBAL: 120, HYBRID: 8, HYBRID+TRY_HARDER: 1".
+     *
+     * @return summary
+     */
+    public String getStatistics() {
+        List<String> parts = new ArrayList<>();
+        for (int i = 0; i < steps.size(); i++) {
+            parts.add(steps.get(i) + ": " + successes.get(i));
+        }
+        return String.join(", ", parts);
+    }
+
+    /**
+     * Gets the description of this chain, which can be parsed again.
+     *
+     * @return comma separated decode steps
+     */
+    @Override
+    public String toString() {
+        return steps.stream().map(DecodeStep::toString).collect(Collectors.joining(", "));
+    }
+
+    /**
+     * A decoded QR code and the step that decoded it.
+     */
+    public static class DecodeResult {
+        private final String qrCode;
+        private final DecodeStep step;
+
+        DecodeResult(String qrCode, DecodeStep step) {
+            this.qrCode = qrCode;
+            this.step = step;
+        }
+
+        /**
+         * Gets the QR code.
+         *
+         * @return QR code
+         */
+        public String getQrCode() {
+            return qrCode;
+        }
+
+        /**
+         * Gets the step that decoded the QR code.
+         *
+         * @return decode step
+         */
+        public DecodeStep getStep() {
+            return step;
+        }
+    }
+}
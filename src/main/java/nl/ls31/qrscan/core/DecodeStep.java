@@ -0,0 +1,169 @@
+package nl.ls31.qrscan.core;
+
+import com.google.zxing.*;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
+
+import java.awt.image.BufferedImage;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A single way of decoding a QR code from an image: a binarizer, optionally with the 'try harder' or 'pure barcode'
+ * modes of ZXing, and optionally after rotating the image.
+ *
+ * <p>
+ * Steps are written as a binarizer name, followed by options, separated by '+'. For example: <i>GLOBAL</i> (fast, works
+ * for most clean pages), <i>HYBRID+TRY_HARDER</i> (slower, but handles uneven lighting and small codes),
+ * <i>GLOBAL+PURE</i> (only for images that are nothing but a QR code) or <i>HYBRID+ROTATE_90</i>.
+ * </p>
+ *
+ * @author Lars Steggink
+ */
+public class DecodeStep {
+
+    private final Binarizer binarizer;
+    private final boolean tryHarder;
+    private final boolean pureBarcode;
+    private final int rotation;
+    private final Map<DecodeHintType, Object> hints;
+
+    /**
+     * A single way of decoding a QR code from an image.
+     *
+     * @param binarizer   binarizer to convert the image to black and white
+     * @param tryHarder   whether to use the (slower) 'try harder' mode
+     * @param pureBarcode whether the image is nothing but a QR code
+     * @param rotation    rotation (counter clockwise) of the image before decoding: 0, 90, 180 or 270 degrees
+     * @throws IllegalArgumentException if the rotation is not a multiple of 90 degrees
+     */
+    public DecodeStep(Binarizer binarizer, boolean tryHarder, boolean pureBarcode, int rotation) {
+        if (rotation % 90 != 0 || rotation < 0 || rotation >= 360) {
+            throw new IllegalArgumentException("Rotation should be 0, 90, 180 or 270 degrees.");
+        }
+        this.binarizer = binarizer;
+        this.tryHarder = tryHarder;
+        this.pureBarcode = pureBarcode;
+        this.rotation = rotation;
+
+        hints = new EnumMap<>(DecodeHintType.class);
+        if (tryHarder) {
+            hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+        }
+        if (pureBarcode) {
+            hints.put(DecodeHintType.PURE_BARCODE, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Parses a step, e.g. "HYBRID+TRY_HARDER".
+     *
+     * @param step step description
+     * @return step
+     * @throws IllegalArgumentException if the description is invalid
+     */
+    public static DecodeStep parse(String step) {
+        String[] parts = step.trim().toUpperCase(Locale.ROOT).split("\\+");
+        Binarizer binarizer = Binarizer.valueOf(parts[0].trim());
+        boolean tryHarder = false;
+        boolean pureBarcode = false;
+        int rotation = 0;
+        for (int i = 1; i < parts.length; i++) {
+            String option = parts[i].trim();
+            if (option.equals("TRY_HARDER")) {
+                tryHarder = true;
+            } else if (option.equals("PURE")) {
+                pureBarcode = true;
+            } else if (option.startsWith("ROTATE_")) {
+                rotation = Integer.parseInt(option.substring("ROTATE_".length()));
+            } else {
+                throw new IllegalArgumentException("Unknown decode option: " + option);
+            }
+        }
+        return new DecodeStep(binarizer, tryHarder, pureBarcode, rotation);
+    }
+
+    /**
+     * Decodes a QR code from an image.
+     *
+     * @param image image to decode
+     * @return QR code that was decoded
+     * @throws NotFoundException if QR code recognition failed
+     */
+    public String decode(BufferedImage image) throws NotFoundException {
+        return decode(image, null);
+    }
+
+    /**
+     * Decodes a QR code from an image, and records the time spent binarizing and decoding.
+     *
+     * @param image   image to decode
+     * @param metrics metrics to record the stages in, or null if not recorded
+     * @return QR code that was decoded
+     * @throws NotFoundException if QR code recognition failed
+     */
+    public String decode(BufferedImage image, ScanMetrics metrics) throws NotFoundException {
+        long start = System.nanoTime();
+        LuminanceSource source = new BufferedImageLuminanceSource(image);
+        for (int r = 0; r < rotation; r += 90) {
+            source = source.rotateCounterClockwise();
+        }
+        BinaryBitmap bitmap = new BinaryBitmap(binarizer == Binarizer.GLOBAL
+                ? new GlobalHistogramBinarizer(source)
+                : new HybridBinarizer(source));
+        if (metrics != null) {
+            // Binarize up front, so it can be timed apart from decoding. The bitmap keeps the result, so the reader
+            // does not binarize again.
+            bitmap.getBlackMatrix();
+            metrics.record(ScanMetrics.Stage.BINARIZE, start);
+            start = System.nanoTime();
+        }
+        try {
+            return new QRCodeReader().decode(bitmap, hints).getText();
+        } catch (ChecksumException | FormatException e) {
+            // Something that looked like a QR code, but could not be read.
+            throw NotFoundException.getNotFoundInstance();
+        } finally {
+            if (metrics != null) {
+                metrics.record(ScanMetrics.Stage.DECODE, start);
+            }
+        }
+    }
+
+    /**
+     * Gets the description of this step, which can be parsed again.
+     *
+     * @return step description
+     */
+    @Override
+    public String toString() {
+        StringBuilder description = new StringBuilder(binarizer.name());
+        if (tryHarder) {
+            description.append("+TRY_HARDER");
+        }
+        if (pureBarcode) {
+            description.append("+PURE");
+        }
+        if (rotation != 0) {
+            description.append("+ROTATE_").append(rotation);
+        }
+        return description.toString();
+    }
+
+    /**
+     * Binarizers, from cheap to expensive.
+     */
+    public enum Binarizer {
+        /**
+         * Global histogram: fast, for evenly lit, clean pages.
+         */
+        GLOBAL,
+        /**
+         * Local thresholding: slower, but handles shadows and uneven lighting.
+         */
+        HYBRID
+    }
+}
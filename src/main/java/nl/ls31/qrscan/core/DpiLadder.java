@@ -0,0 +1,144 @@
+package nl.ls31.qrscan.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * The DPI settings that are tried, one after another, when rendering a page for QR code recognition.
+ *
+ * <p>
+ * During a scan run, the ladder learns which DPI settings succeed. Only pages on which a QR code was found count: the
+ * DPI setting that decoded the page succeeded, and the settings that were tried before it on the same page failed.
+ * Pages without a QR code (or pages that were given up on) say nothing about the DPI settings. The settings with the
+ * highest success rate are tried first, and settings that never succeeded after a warm-up period are skipped
+ * altogether, except the highest setting. The learned order can be stored (see {@link #toString()}) so that the next
+ * run starts from the best known order. This class is thread-safe.
+ * </p>
+ *
+ * @author Lars Steggink
+ */
+public class DpiLadder {
+    /**
+     * The DPI settings used when nothing has been learned yet, lowest first.
+     */
+    final static public int[] DEFAULT_DPIS = {150, 200, 250, 300};
+    /**
+     * Number of failed attempts without any success before a DPI setting is skipped.
+     */
+    final static private int PRUNE_AFTER_ATTEMPTS = 50;
+    // DPI setting -> {attempts, successes}, in the initial order.
+    private final Map<Integer, long[]> statistics = new LinkedHashMap<>();
+
+    /**
+     * Creates a ladder starting with the specified order.
+     *
+     * @param dpis DPI settings, in the order they should be tried at first
+     * @throws IllegalArgumentException if no DPI settings were specified or a setting was negative or zero
+     */
+    public DpiLadder(int... dpis) {
+        if (dpis.length == 0) {
+            throw new IllegalArgumentException("No DPI settings.");
+        }
+        for (int dpi : dpis) {
+            if (dpi < 1) {
+                throw new IllegalArgumentException("DPI setting is negative or zero.");
+            }
+            statistics.putIfAbsent(dpi, new long[2]);
+        }
+    }
+
+    /**
+     * Creates a ladder from a stored order, e.g. "250,300,150,200".
+     *
+     * @param storedOrder comma separated DPI settings
+     * @return ladder
+     * @throws IllegalArgumentException if the order is empty or a DPI setting is invalid
+     */
+    public static DpiLadder parse(String storedOrder) {
+        int[] dpis = Arrays.stream(storedOrder.split(","))
+                .map(String::trim)
+                .mapToInt(dpi -> {
+                    try {
+                        return Integer.parseInt(dpi);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid DPI setting: '" + dpi + "'.");
+                    }
+                })
+                .toArray();
+        return new DpiLadder(dpis);
+    }
+
+    /**
+     * Gets the DPI settings in the order they should currently be tried: highest success rate first, never successful
+     * settings (after warm-up) left out.
+     *
+     * @return DPI settings to try
+     */
+    public synchronized List<Integer> getOrder() {
+        List<Integer> order = sortedBySuccessRate();
+        order.removeIf(this::isPruned);
+        return order;
+    }
+
+    /**
+     * Records a page on which a QR code was found.
+     *
+     * @param dpi        DPI setting that decoded the page
+     * @param failedDpis DPI settings that were tried before on the same page, without success
+     */
+    public synchronized void recordSuccess(int dpi, Collection<Integer> failedDpis) {
+        for (int failedDpi : failedDpis) {
+            statistics.computeIfAbsent(failedDpi, key -> new long[2])[0]++;
+        }
+        long[] counts = statistics.computeIfAbsent(dpi, key -> new long[2]);
+        counts[0]++;
+        counts[1]++;
+    }
+
+    /**
+     * Sorts all DPI settings by success rate, highest first. The rate is smoothed, so that a setting with few attempts
+     * does not jump ahead of a setting that succeeded many times: (successes + 1) / (attempts + 2).
+     *
+     * @return DPI settings
+     */
+    private List<Integer> sortedBySuccessRate() {
+        List<Integer> order = new ArrayList<>(statistics.keySet());
+        // Stable sort, so ties keep their initial order.
+        order.sort(Comparator.comparingDouble((Integer dpi) -> {
+            long[] counts = statistics.get(dpi);
+            return (counts[1] + 1.0) / (counts[0] + 2.0);
+        }).reversed());
+        return order;
+    }
+
+    /**
+     * Whether a DPI setting is skipped, because it never succeeded while other settings did. The highest DPI setting
+     * is never skipped, as it is the last resort for small or poor QR codes.
+     *
+     * @param dpi DPI setting
+     * @return whether it is skipped
+     */
+    private boolean isPruned(int dpi) {
+        long[] counts = statistics.get(dpi);
+        boolean othersSucceed = statistics.values().stream().anyMatch(c -> c[1] > 0);
+        boolean highest = statistics.keySet().stream().allMatch(other -> other <= dpi);
+        return !highest && counts[1] == 0 && counts[0] >= PRUNE_AFTER_ATTEMPTS && othersSucceed;
+    }
+
+    /**
+     * Gets the learned order of all DPI settings (including skipped ones, at the end) as a comma separated string,
+     * which can be stored and parsed later.
+     *
+     * @return comma separated DPI settings
+     */
+    @Override
+    public synchronized String toString() {
+        return sortedBySuccessRate().stream().map(String::valueOf).collect(Collectors.joining(","));
+    }
+}
@@ -0,0 +1,206 @@
+package nl.ls31.qrscan.core;
+
+import nl.ls31.qrscan.model.PdfScanResult;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Recognises PDF files with identical contents, e.g. copies caused by scanner retries or re-sent emails, so that only
+ * one file of each group (the representative) needs to be scanned.
+ *
+ * <p>
+ * Files are registered one by one, while they are being discovered and scanned. They are grouped by size first. A file
+ * is only hashed (see ScanCache.hashFile()) once another file of the same size shows up, so files with a unique size
+ * are never hashed. Files are hashed outside of any lock, so workers only wait for each other to publish a hash, never
+ * for reading a file. The first registered file of a group is its representative. Files that cannot be read are never
+ * considered duplicates; scanning them reports the actual problem. This class is thread-safe.
+ * </p>
+ *
+ * <p>
+ * Per size, only the path of the first file is kept until it has been hashed. After that, only the hashes and the
+ * (future) results of the representatives are kept, as a duplicate may show up at any time during the run. If files
+ * are moved after scanning (renaming), a first file that has not been hashed yet must be hashed before it is moved,
+ * see {@link #hashBeforeMove(PdfScanner, long)}.
+ * </p>
+ *
+ * @author Lars Steggink
+ */
+public class DuplicateIndex {
+    private final Map<Long, SizeGroup> bySize = new ConcurrentHashMap<>();
+    private final Map<PdfScanner, CompletableFuture<PdfScanResult>> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger duplicateCount = new AtomicInteger();
+
+    /**
+     * Registers a file before scanning it.
+     *
+     * <p>
+     * If the file is identical to a file that was registered before, the (future) result of that file is returned and
+     * the file does not need to be scanned. Otherwise, the file is a representative: the caller must scan it and then
+     * report the result with {@link #complete(PdfScanner, PdfScanResult)} or {@link #fail(PdfScanner, Throwable)}.
+     * </p>
+     *
+     * @param pdf  PDF file
+     * @param size size of the file (bytes)
+     * @return result of the identical file, or null if the file is a representative
+     */
+    public CompletableFuture<PdfScanResult> register(PdfScanner pdf, long size) {
+        SizeGroup group = bySize.computeIfAbsent(size, s -> new SizeGroup());
+        Path firstPath = null;
+        CompletableFuture<String> firstHash;
+        synchronized (group) {
+            if (group.firstResult == null) {
+                // Unique size so far, so no need to hash yet.
+                group.firstPath = pdf.getPath();
+                group.firstResult = new CompletableFuture<>();
+                pending.put(pdf, group.firstResult);
+                return null;
+            }
+            if (group.firstHash == null) {
+                // This worker hashes the first file, other workers with a file of this size wait for its hash.
+                firstPath = claimFirst(group);
+            }
+            firstHash = group.firstHash;
+        }
+
+        if (firstPath != null) {
+            hashFirst(firstPath, firstHash);
+        }
+        String hash;
+        try {
+            hash = ScanCache.hashFile(pdf.getPath());
+        } catch (IOException e) {
+            // Scan it anyway, to report the actual problem.
+            return null;
+        }
+        String hashOfFirst = firstHash.join();
+
+        CompletableFuture<PdfScanResult> result = new CompletableFuture<>();
+        synchronized (group) {
+            if (hashOfFirst != null) {
+                group.byHash.putIfAbsent(hashOfFirst, group.firstResult);
+            }
+            CompletableFuture<PdfScanResult> original = group.byHash.putIfAbsent(hash, result);
+            if (original != null) {
+                duplicateCount.incrementAndGet();
+                return original;
+            }
+        }
+        pending.put(pdf, result);
+        return null;
+    }
+
+    /**
+     * Makes sure a representative that is about to be moved has been hashed, if it is the first file of its size
+     * group. Otherwise, a duplicate that shows up later could not hash it anymore. If another worker is hashing it
+     * already, this waits until it is done. Call this before reporting the result.
+     *
+     * @param pdf  representative
+     * @param size size of the file (bytes), as registered
+     */
+    public void hashBeforeMove(PdfScanner pdf, long size) {
+        SizeGroup group = bySize.get(size);
+        CompletableFuture<PdfScanResult> ownResult = pending.get(pdf);
+        if (group == null || ownResult == null) {
+            return;
+        }
+        Path firstPath = null;
+        CompletableFuture<String> firstHash;
+        synchronized (group) {
+            if (group.firstResult != ownResult) {
+                // Not the first file, so it was hashed when it was registered.
+                return;
+            }
+            if (group.firstHash == null) {
+                firstPath = claimFirst(group);
+            }
+            firstHash = group.firstHash;
+        }
+        if (firstPath != null) {
+            hashFirst(firstPath, firstHash);
+        } else {
+            firstHash.join();
+        }
+    }
+
+    /**
+     * Claims hashing the first file of a size group. Call this while holding the lock of the group, and only if its
+     * hash was not claimed before.
+     *
+     * @param group size group
+     * @return path of the first file
+     */
+    private static Path claimFirst(SizeGroup group) {
+        group.firstHash = new CompletableFuture<>();
+        Path firstPath = group.firstPath;
+        group.firstPath = null;
+        return firstPath;
+    }
+
+    /**
+     * Hashes the first file of a size group, and publishes the hash to the workers that wait for it.
+     *
+     * @param firstPath path of the first file
+     * @param firstHash receives the hash, or null if the first file is unreadable (and has no duplicates)
+     */
+    private static void hashFirst(Path firstPath, CompletableFuture<String> firstHash) {
+        String hash = null;
+        try {
+            hash = ScanCache.hashFile(firstPath);
+        } catch (IOException e) {
+            // Unreadable files are never considered duplicates.
+        } finally {
+            firstHash.complete(hash);
+        }
+    }
+
+    /**
+     * Reports the result of a representative, which is passed on to its duplicates.
+     *
+     * @param pdf    representative
+     * @param result result of scanning
+     */
+    public void complete(PdfScanner pdf, PdfScanResult result) {
+        CompletableFuture<PdfScanResult> future = pending.remove(pdf);
+        if (future != null) {
+            future.complete(result);
+        }
+    }
+
+    /**
+     * Reports that scanning a representative failed unexpectedly, so that its duplicates do not wait forever.
+     *
+     * @param pdf   representative
+     * @param cause cause of the failure
+     */
+    public void fail(PdfScanner pdf, Throwable cause) {
+        CompletableFuture<PdfScanResult> future = pending.remove(pdf);
+        if (future != null) {
+            future.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Gets the number of duplicates so far, i.e. files that are not scanned themselves.
+     *
+     * @return number of duplicates
+     */
+    public int getDuplicateCount() {
+        return duplicateCount.get();
+    }
+
+    /**
+     * Files of the same size.
+     */
+    private static class SizeGroup {
+        private final Map<String, CompletableFuture<PdfScanResult>> byHash = new HashMap<>();
+        private Path firstPath;
+        private CompletableFuture<PdfScanResult> firstResult;
+        private CompletableFuture<String> firstHash;
+    }
+}
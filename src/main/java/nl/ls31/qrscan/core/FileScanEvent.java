@@ -0,0 +1,64 @@
+package nl.ls31.qrscan.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for getting the QR code of a single PDF file, from the file attribute, the scan cache or by
+ * scanning the file. The duration of the event is the time spent on the file.
+ *
+ * <p>
+ * Record a run with e.g. <i>java -XX:StartFlightRecording=filename=qrscan.jfr ...</i> and open it in JDK Mission
+ * Control to see which files dominate the scan time. If no recording is running, the event costs next to nothing.
+ * </p>
+ *
+ * @author Lars Steggink
+ * @see PageScanEvent
+ */
+@Name("nl.ls31.qrscan.FileScan")
+@Label("File Scan")
+@Category("QRScan")
+@Description("Getting the QR code of a PDF file")
+@StackTrace(false)
+final class FileScanEvent extends Event {
+    @Label("File")
+    String file;
+
+    @Label("File Size")
+    @DataAmount
+    long size;
+
+    @Label("Source")
+    @Description("Where the QR code was taken from: file attribute, scan cache or scan")
+    String source;
+
+    @Label("Page Count")
+    int pageCount;
+
+    @Label("Pages Probed")
+    int pagesProbed;
+
+    @Label("Page")
+    @Description("Page where the QR code was found, or 0 if not found")
+    int page;
+
+    @Label("Attempts")
+    @Description("Number of images (embedded or rendered) that were decoded")
+    int attempts;
+
+    @Label("Successful Attempt")
+    String successfulAttempt;
+
+    @Label("Image Bytes")
+    @Description("Size of all embedded and rendered images that were decoded")
+    @DataAmount
+    long imageBytes;
+
+    @Label("QR Code")
+    String qrCode;
+}
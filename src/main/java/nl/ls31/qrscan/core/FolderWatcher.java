@@ -0,0 +1,443 @@
+package nl.ls31.qrscan.core;
+
+import nl.ls31.qrscan.model.PdfScanResult;
+import org.tinylog.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watches a hot folder (recursively) and scans and renames every PDF file that arrives, within seconds, until closed.
+ *
+ * <p>
+ * New and changed files are reported by a WatchService. A file is only scanned once it has been quiet for a while and
+ * its size and modification time did not change in the meantime, so files that are still being written are skipped
+ * until they are complete. Files that cannot be read are retried a few times, as the writer may simply have been slow.
+ * Files with a QR code are renamed into the output directory, just like RenamePdfsTask does; files without a QR code
+ * are left in place. Every result is appended to a CSV log in the output directory, which rolls over every day.
+ * </p>
+ *
+ * <p>
+ * The watcher only keeps state for files that are waiting or being scanned, and the size and modification time of
+ * files that were left in place, so throughput does not depend on the number of files renamed before. PDF files that
+ * are already in the folder when watching starts, or that were missed because the WatchService overflowed, are picked
+ * up by walking the folder. Files that were left in place are only scanned again if they changed.
+ * </p>
+ *
+ * @author Lars Steggink
+ */
+public class FolderWatcher implements Closeable {
+    /**
+     * Time (ms) a file must be quiet before it is scanned.
+     */
+    final static private long QUIET_PERIOD = 2000;
+    /**
+     * Time (ms) between checks of waiting files.
+     */
+    final static private long POLL_INTERVAL = 250;
+    /**
+     * Number of times an unreadable file is retried.
+     */
+    final static private int MAX_RETRIES = 3;
+    private final Path inputDir;
+    private final ScanOptions options;
+    private final ScanEngine engine;
+    private final PdfFileRenamer renamer;
+    private final Consumer<PdfScanResult> handler;
+    private final Map<WatchKey, Path> watchedDirs = new HashMap<>();
+    private final Map<Path, Waiting> waiting = new HashMap<>();
+    private final Set<Path> scanning = ConcurrentHashMap.newKeySet();
+    // Files that were handled and left in place (e.g. without QR code) -> their size and modification time.
+    private final Map<Path, Handled> handled = new ConcurrentHashMap<>();
+    private final Queue<Waiting> retries = new ConcurrentLinkedQueue<>();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private volatile boolean started;
+    private volatile boolean closed;
+    private volatile WatchService watchService;
+    private CsvLogStreamWriter log;
+    private LocalDate logDate;
+
+    /**
+     * @param inputDir  hot folder, watched recursively
+     * @param outputDir main output directory for renamed PDF files; skipped if it is within the hot folder
+     * @param options   scan options, including the number of workers
+     * @param handler   receives every result after logging, from any worker thread
+     */
+    public FolderWatcher(Path inputDir, Path outputDir, ScanOptions options, Consumer<PdfScanResult> handler) {
+        this.inputDir = inputDir.toAbsolutePath().normalize();
+        this.options = options;
+        this.engine = new ScanEngine(options);
+        this.renamer = new PdfFileRenamer(outputDir.toAbsolutePath().normalize());
+        this.handler = handler;
+    }
+
+    /**
+     * Watches the hot folder until closed or interrupted. Files that are being scanned when watching stops are still
+     * finished.
+     *
+     * @throws IOException if unable to watch the hot folder or to use the output directory
+     */
+    public void run() throws IOException {
+        started = true;
+        try {
+            renamer.prepareOutputDirectory();
+            watchService = inputDir.getFileSystem().newWatchService();
+            ExecutorService workers = Executors.newFixedThreadPool(options.getWorkerCount());
+            ExecutorService pageProbes = engine.openPageProbes();
+            try {
+                registerAll(inputDir);
+                Logger.info("Watching " + inputDir + " for new PDF files.");
+                watch(workers);
+            } finally {
+                workers.shutdown();
+                awaitTermination(workers);
+                engine.closePageProbes(pageProbes);
+                closeLog();
+            }
+        } finally {
+            stopped.countDown();
+        }
+    }
+
+    /**
+     * Handles file system events and starts scanning files once they are ready, until closed or interrupted.
+     *
+     * @param workers worker threads
+     * @throws IOException if unable to register a new directory
+     */
+    private void watch(ExecutorService workers) throws IOException {
+        try {
+            while (!closed) {
+                WatchKey key = watchService.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                while (key != null) {
+                    handleEvents(key);
+                    key = watchService.poll();
+                }
+                for (Waiting retry = retries.poll(); retry != null; retry = retries.poll()) {
+                    waiting.putIfAbsent(retry.path, retry);
+                }
+                submitReadyFiles(workers);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // Closed while waiting for events.
+        }
+    }
+
+    /**
+     * Handles the events of a single watched directory.
+     *
+     * @param key key of the watched directory
+     * @throws IOException if unable to register a new directory
+     */
+    private void handleEvents(WatchKey key) throws IOException {
+        Path dir = watchedDirs.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                Logger.warn("Missed file system events, checking for new files.");
+                registerAll(inputDir);
+                continue;
+            }
+            if (dir == null) {
+                continue;
+            }
+            Path child = dir.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child)) {
+                try {
+                    registerAll(child);
+                } catch (IOException e) {
+                    // E.g. removed again right away.
+                    Logger.warn(e, "!Unable to watch " + child.getFileName() + ".");
+                }
+            } else if (isPdf(child) && !renamer.isRenamedFile(child)) {
+                Waiting file = waiting.computeIfAbsent(child, Waiting::new);
+                file.lastEvent = System.currentTimeMillis();
+            }
+        }
+        if (!key.reset()) {
+            watchedDirs.remove(key);
+        }
+    }
+
+    /**
+     * Starts watching a directory and its sub directories, and adds the PDF files in them to the waiting files, except
+     * files that were handled before and did not change. When walking the whole hot folder, files that were handled
+     * before but are gone now are forgotten.
+     *
+     * @param dir directory
+     * @throws IOException if unable to walk the directory
+     */
+    private void registerAll(Path dir) throws IOException {
+        Set<Path> seen = new HashSet<>();
+        Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path subDir, BasicFileAttributes attrs) throws IOException {
+                if (renamer.isOutputSubtree(subDir, inputDir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                WatchKey key = subDir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                watchedDirs.put(key, subDir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path filePath, BasicFileAttributes attrs) {
+                if (isPdf(filePath) && !renamer.isRenamedFile(filePath)) {
+                    seen.add(filePath);
+                    if (!isHandled(filePath, attrs.size(), attrs.lastModifiedTime())) {
+                        waiting.computeIfAbsent(filePath, Waiting::new);
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path filePath, IOException e) {
+                Logger.warn(e, "!Unable to read " + filePath.getFileName() + ".");
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        if (dir.equals(inputDir)) {
+            handled.keySet().retainAll(seen);
+        }
+    }
+
+    /**
+     * Checks whether a file was handled and left in place before, and did not change since.
+     *
+     * @param path     file path
+     * @param size     current size of the file
+     * @param modified current modification time of the file
+     * @return whether the file was handled before
+     */
+    private boolean isHandled(Path path, long size, FileTime modified) {
+        Handled file = handled.get(path);
+        return file != null && file.size == size && file.modified.equals(modified);
+    }
+
+    /**
+     * Starts scanning every waiting file that has been quiet long enough, and did not change since it was last
+     * checked. Files that disappeared are forgotten.
+     *
+     * @param workers worker threads
+     */
+    private void submitReadyFiles(ExecutorService workers) {
+        long now = System.currentTimeMillis();
+        Iterator<Waiting> it = waiting.values().iterator();
+        while (it.hasNext()) {
+            Waiting file = it.next();
+            if (now - file.lastEvent < QUIET_PERIOD || scanning.contains(file.path)) {
+                continue;
+            }
+            long size;
+            FileTime modified;
+            try {
+                size = Files.size(file.path);
+                modified = Files.getLastModifiedTime(file.path);
+            } catch (IOException e) {
+                // Moved or removed in the meantime.
+                it.remove();
+                handled.remove(file.path);
+                continue;
+            }
+            if (size != file.size || !Objects.equals(modified, file.modified)) {
+                // Still changing, or checked for the first time: wait another quiet period.
+                file.size = size;
+                file.modified = modified;
+                file.lastEvent = now;
+                continue;
+            }
+            it.remove();
+            if (isHandled(file.path, size, modified)) {
+                // E.g. only its attributes changed.
+                continue;
+            }
+            scanning.add(file.path);
+            workers.execute(() -> process(file));
+        }
+    }
+
+    /**
+     * Scans a single file, renames it if its QR code was found, and logs the result. Unreadable files are retried.
+     * Files that fail unexpectedly are logged as unreadable.
+     *
+     * @param file waiting file
+     */
+    private void process(Waiting file) {
+        PdfScanner pdf = new PdfScanner(file.path);
+        try {
+            PdfScanResult result;
+            try {
+                result = engine.scanFile(pdf);
+            } catch (RuntimeException e) {
+                // E.g. a bug in PDFBox or ZXing for this particular file, keep watching for other files.
+                Logger.error(e, "!Unable to scan " + file.path.getFileName() + ".");
+                result = new PdfScanResult(pdf.getFileInfo(), PdfScanResult.ResultStatus.NO_FILE_ACCESS,
+                        pdf.getFoundPage(), "");
+                handled.put(file.path, new Handled(file.size, file.modified));
+                writeLog(result);
+                handler.accept(result);
+                return;
+            }
+            if (result.getQrCodeScanStatus() == PdfScanResult.ResultStatus.NO_FILE_ACCESS && !closed
+                    && file.retries < MAX_RETRIES && Files.exists(file.path)) {
+                Logger.info("Retrying " + file.path.getFileName() + " later.");
+                file.retries++;
+                file.lastEvent = System.currentTimeMillis();
+                retries.add(file);
+                return;
+            }
+            if (result.isQRCodeFound()) {
+                try {
+                    renamer.rename(result);
+                } catch (IOException e) {
+                    Logger.error(e, "!Unable to rename " + file.path.getFileName() + ".");
+                }
+            }
+            if (!result.isFileRenamed()) {
+                handled.put(file.path, new Handled(file.size, file.modified));
+            }
+            writeLog(result);
+            handler.accept(result);
+        } finally {
+            scanning.remove(file.path);
+        }
+    }
+
+    /**
+     * Appends a result to the CSV log of today, rolling over to a new log file at the start of a new day.
+     *
+     * @param result result of scanning and renaming
+     */
+    private synchronized void writeLog(PdfScanResult result) {
+        try {
+            LocalDate today = LocalDate.now();
+            if (!today.equals(logDate)) {
+                closeLog();
+                log = CsvLogStreamWriter.openForAppend(renamer.getOutputDirectory()
+                        .resolve("WatchResults_QRScan_" + today + ".csv"));
+                logDate = today;
+            }
+            log.write(result);
+        } catch (IOException e) {
+            Logger.error(e, "Unable to log result of " + result.getInputFilePath().getFileName() + " in CSV file.");
+        }
+    }
+
+    /**
+     * Closes the current CSV log, if any.
+     */
+    private synchronized void closeLog() {
+        if (log == null) {
+            return;
+        }
+        try {
+            log.close();
+        } catch (IOException e) {
+            Logger.error(e, "Unable to log results in CSV file.");
+        }
+        log = null;
+        logDate = null;
+    }
+
+    /**
+     * Waits for the worker threads to finish the files they are scanning.
+     *
+     * @param workers worker threads
+     */
+    private static void awaitTermination(ExecutorService workers) {
+        try {
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Checks whether a path looks like a PDF file.
+     *
+     * @param path path
+     * @return whether the file name ends with .pdf
+     */
+    private static boolean isPdf(Path path) {
+        return path.getFileName().toString().toLowerCase().endsWith(".pdf");
+    }
+
+    /**
+     * Stops watching and waits until the files that are being scanned are finished.
+     *
+     * @throws IOException if unable to close the WatchService
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (watchService != null) {
+            watchService.close();
+        }
+        if (!started) {
+            return;
+        }
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Size and modification time of a file that was handled and left in place.
+     */
+    private static class Handled {
+        private final long size;
+        private final FileTime modified;
+
+        Handled(long size, FileTime modified) {
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    /**
+     * A file that waits until it has been quiet long enough.
+     */
+    private static class Waiting {
+        private final Path path;
+        private volatile long lastEvent;
+        private long size = -1;
+        private FileTime modified;
+        private int retries;
+
+        Waiting(Path path) {
+            this.path = path;
+            this.lastEvent = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package nl.ls31.qrscan.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for scanning a single page of a PDF file: first its embedded images, then renders at several
+ * DPI settings. The duration of the event is the time spent on the page.
+ *
+ * @author Lars Steggink
+ * @see FileScanEvent
+ */
+@Name("nl.ls31.qrscan.PageScan")
+@Label("Page Scan")
+@Category("QRScan")
+@Description("Scanning a page of a PDF file for a QR code")
+@StackTrace(false)
+final class PageScanEvent extends Event {
+    @Label("File")
+    String file;
+
+    @Label("Page")
+    int page;
+
+    @Label("Attempts")
+    @Description("Images that were decoded, in order, e.g. \"embedded, 200 DPI (Full page), 300 DPI (Full page)\"")
+    String attempts;
+
+    @Label("Attempt Count")
+    int attemptCount;
+
+    @Label("Successful Attempt")
+    @Description("Image and decode step that yielded the QR code, or empty if not found")
+    String successfulAttempt;
+
+    @Label("Image Bytes")
+    @Description("Size of all embedded and rendered images that were decoded")
+    @DataAmount
+    long imageBytes;
+}
@@ -0,0 +1,154 @@
+package nl.ls31.qrscan.core;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The pages of a PDF file where a QR code is searched for, in order of preference.
+ *
+ * <p>
+ * A selection is written as comma separated pages or ranges. The word <i>last</i> stands for the last page of the
+ * document and <i>any</i> for all pages. Examples: <i>1</i>, <i>1-3</i>, <i>1, last</i>, <i>2-last</i> or
+ * <i>any</i>. Pages that do not exist in a document are ignored.
+ * </p>
+ *
+ * @author Lars Steggink
+ */
+public class PageSelection {
+    // Marker for the last page of a document.
+    final static private int LAST = -1;
+    private final List<int[]> ranges;
+    private final String description;
+
+    private PageSelection(List<int[]> ranges, String description) {
+        this.ranges = ranges;
+        this.description = description;
+    }
+
+    /**
+     * Selects a single page.
+     *
+     * @param page page (starting at 1)
+     * @return selection
+     * @throws IllegalArgumentException if the page number is negative or zero
+     */
+    public static PageSelection single(int page) {
+        if (page < 1) {
+            throw new IllegalArgumentException("Page is negative or zero.");
+        }
+        List<int[]> ranges = new ArrayList<>();
+        ranges.add(new int[]{page, page});
+        return new PageSelection(ranges, String.valueOf(page));
+    }
+
+    /**
+     * Parses a selection, e.g. "1, last".
+     *
+     * @param selection comma separated pages or ranges
+     * @return selection
+     * @throws IllegalArgumentException if the selection is empty or invalid
+     */
+    public static PageSelection parse(String selection) {
+        List<int[]> ranges = new ArrayList<>();
+        List<String> parts = new ArrayList<>();
+        for (String part : selection.toLowerCase(Locale.ROOT).split(",")) {
+            part = part.replace(" ", "");
+            if (part.isEmpty()) {
+                continue;
+            }
+            if (part.equals("any")) {
+                ranges.add(new int[]{1, LAST});
+            } else if (part.contains("-")) {
+                String[] bounds = part.split("-", 2);
+                ranges.add(new int[]{parsePage(bounds[0]), parsePage(bounds[1])});
+            } else {
+                int page = parsePage(part);
+                ranges.add(new int[]{page, page});
+            }
+            parts.add(part);
+        }
+        if (ranges.isEmpty()) {
+            throw new IllegalArgumentException("No pages selected.");
+        }
+        return new PageSelection(ranges, String.join(", ", parts));
+    }
+
+    /**
+     * Parses a single page number or "last".
+     *
+     * @param page page number or "last"
+     * @return page number, or LAST
+     * @throws IllegalArgumentException if invalid
+     */
+    private static int parsePage(String page) {
+        if (page.equals("last")) {
+            return LAST;
+        }
+        int number = Integer.parseInt(page);
+        if (number < 1) {
+            throw new IllegalArgumentException("Page is negative or zero.");
+        }
+        return number;
+    }
+
+    /**
+     * Gets the pages of a document with the specified number of pages, in order of preference and without doubles.
+     *
+     * @param numberOfPages number of pages in the document
+     * @return pages (starting at 1), possibly empty
+     */
+    public List<Integer> resolve(int numberOfPages) {
+        Set<Integer> pages = new LinkedHashSet<>();
+        for (int[] range : ranges) {
+            int from = range[0] == LAST ? numberOfPages : range[0];
+            int to = range[1] == LAST ? numberOfPages : range[1];
+            // Only walk the pages that exist, e.g. "1-1000000000" on a document of 5 pages.
+            int first = Math.max(Math.min(from, to), 1);
+            int last = Math.min(Math.max(from, to), numberOfPages);
+            if (first > last) {
+                continue;
+            }
+            if (from <= to) {
+                for (int page = first; page <= last; page++) {
+                    pages.add(page);
+                }
+            } else {
+                for (int page = last; page >= first; page--) {
+                    pages.add(page);
+                }
+            }
+        }
+        return new ArrayList<>(pages);
+    }
+
+    /**
+     * Gets whether only a single, fixed page is selected.
+     *
+     * @return whether a single page is selected
+     */
+    public boolean isSinglePage() {
+        return ranges.size() == 1 && ranges.get(0)[0] == ranges.get(0)[1] && ranges.get(0)[0] != LAST;
+    }
+
+    /**
+     * Gets the first fixed page number of this selection, e.g. to report when no page was actually scanned.
+     *
+     * @return first page number, or 0 if the selection starts with the last page
+     */
+    public int getNominalPage() {
+        return ranges.get(0)[0] == LAST ? 0 : ranges.get(0)[0];
+    }
+
+    /**
+     * Gets the description of this selection, which can be parsed again.
+     *
+     * @return description
+     */
+    @Override
+    public String toString() {
+        return description;
+    }
+}
@@ -0,0 +1,19 @@
+package nl.ls31.qrscan.core;
+
+import java.io.IOException;
+
+/**
+ * Thrown if a page (or an image on it) is too large to render or decode within the memory limits.
+ *
+ * @author Lars Steggink
+ */
+public class PageTooLargeException extends IOException {
+    final static private long serialVersionUID = 1L;
+
+    /**
+     * @param message detail message
+     */
+    public PageTooLargeException(String message) {
+        super(message);
+    }
+}
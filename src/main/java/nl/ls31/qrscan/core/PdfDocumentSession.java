@@ -0,0 +1,228 @@
+package nl.ls31.qrscan.core;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An opened and parsed PDF file.
+ *
+ * <p>
+ * The PDF file is loaded only once, when the session is opened. The page count and every page render are then served
+ * from that same parsed document, until the session is closed. Use it in a try-with-resources statement.
+ * </p>
+ *
+ * <p>
+ * PDFBox documents are not thread-safe, so all access to the document is serialized. Several threads may share a
+ * session, e.g. to decode renders of different pages in parallel.
+ * </p>
+ *
+ * @author Lars Steggink
+ */
+public class PdfDocumentSession implements Closeable {
+    /**
+     * How deep nested form XObjects are searched for embedded images.
+     */
+    final static private int MAX_FORM_DEPTH = 3;
+    private final PDDocument pdfDoc;
+    private final PDFRenderer renderer;
+
+    /**
+     * Opens and parses a PDF file, entirely in main memory.
+     *
+     * @param docPath path of the document
+     * @throws IOException if unable to read or parse the file
+     */
+    public PdfDocumentSession(Path docPath) throws IOException {
+        this(docPath, MemoryUsageSetting.setupMainMemoryOnly());
+    }
+
+    /**
+     * Opens and parses a PDF file, with limits on the use of main memory. If main memory is restricted, PDFBox buffers
+     * the document in a scratch file and large embedded images may be subsampled while rendering.
+     *
+     * @param docPath     path of the document
+     * @param memoryUsage memory usage setting for PDFBox
+     * @throws IOException if unable to read or parse the file
+     */
+    public PdfDocumentSession(Path docPath, MemoryUsageSetting memoryUsage) throws IOException {
+        this.pdfDoc = PDDocument.load(docPath.toFile(), memoryUsage);
+        this.renderer = new PDFRenderer(pdfDoc);
+        renderer.setSubsamplingAllowed(memoryUsage.isMainMemoryRestricted() || !memoryUsage.useMainMemory());
+    }
+
+    /**
+     * Gets the number of pages.
+     *
+     * @return number of pages
+     */
+    public synchronized int getNumberOfPages() {
+        return pdfDoc.getNumberOfPages();
+    }
+
+    /**
+     * Renders a page.
+     *
+     * @param page page to render (starting at 1)
+     * @param dpi  renderer DPI
+     * @return render of the page
+     * @throws IOException if failed to render the page
+     */
+    public synchronized BufferedImage renderPage(int page, int dpi) throws IOException {
+        return renderer.renderImageWithDPI(page - 1, dpi, ImageType.BINARY);
+    }
+
+    /**
+     * Renders only a region of a page. The rest of the page is not rasterised at all.
+     *
+     * @param page   page to render (starting at 1)
+     * @param dpi    renderer DPI
+     * @param region region of the page to render
+     * @return render of the region
+     * @throws IOException if failed to render the page
+     */
+    public synchronized BufferedImage renderPage(int page, int dpi, ScanRegion region) throws IOException {
+        if (region.isFullPage()) {
+            return renderPage(page, dpi);
+        }
+
+        // Render onto a smaller image, shifted so that only the region ends up on it.
+        Rectangle bounds = getRenderBounds(page, dpi, region);
+        BufferedImage image = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_BYTE_BINARY);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setBackground(Color.WHITE);
+            graphics.clearRect(0, 0, bounds.width, bounds.height);
+            graphics.translate(-bounds.x, -bounds.y);
+            renderer.renderPageToGraphics(page - 1, graphics, dpi / 72f);
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Gets the bounds of a render of (a region of) a page, without rendering. This can be used to estimate the memory
+     * needed for rendering.
+     *
+     * @param page   page (starting at 1)
+     * @param dpi    renderer DPI
+     * @param region region of the page
+     * @return bounds of the render (px), relative to the full page render
+     */
+    public synchronized Rectangle getRenderBounds(int page, int dpi, ScanRegion region) {
+        // Determine the size of the full render, in the same way PDFRenderer does.
+        PDPage pdPage = pdfDoc.getPage(page - 1);
+        PDRectangle cropBox = pdPage.getCropBox();
+        float scale = dpi / 72f;
+        int widthPx = (int) Math.max(Math.floor(cropBox.getWidth() * scale), 1);
+        int heightPx = (int) Math.max(Math.floor(cropBox.getHeight() * scale), 1);
+        int rotation = pdPage.getRotation();
+        if (rotation == 90 || rotation == 270) {
+            int swap = widthPx;
+            widthPx = heightPx;
+            heightPx = swap;
+        }
+        return region.getBounds(widthPx, heightPx);
+    }
+
+    /**
+     * Gets the rotation of a page, as displayed.
+     *
+     * @param page page (starting at 1)
+     * @return rotation in degrees (0, 90, 180 or 270)
+     */
+    public synchronized int getPageRotation(int page) {
+        return pdfDoc.getPage(page - 1).getRotation();
+    }
+
+    /**
+     * Gets the images that are embedded in a page (also inside forms), without decoding them yet. PDF files straight
+     * from a scanner usually have a single JBIG2, CCITT or JPEG image per page.
+     *
+     * @param page page (starting at 1)
+     * @return embedded images, possibly empty
+     */
+    public synchronized List<PDImageXObject> getEmbeddedImages(int page) {
+        List<PDImageXObject> images = new ArrayList<>();
+        addEmbeddedImages(pdfDoc.getPage(page - 1).getResources(), images, 0);
+        return images;
+    }
+
+    /**
+     * Decodes an embedded image as it is stored in the file, i.e. without rendering the page.
+     *
+     * @param image embedded image
+     * @return decoded image
+     * @throws IOException if the image is damaged or its format is not supported
+     */
+    public synchronized BufferedImage readImage(PDImageXObject image) throws IOException {
+        BufferedImage decoded = image.getImage();
+        if (decoded == null) {
+            throw new IOException("Unable to decode embedded image.");
+        }
+        return decoded;
+    }
+
+    /**
+     * Adds the images in the resources (and in nested forms) to a list.
+     *
+     * @param resources resources of a page or form
+     * @param images    list to add images to
+     * @param depth     current nesting depth
+     */
+    private void addEmbeddedImages(PDResources resources, List<PDImageXObject> images, int depth) {
+        if (resources == null || depth > MAX_FORM_DEPTH) {
+            return;
+        }
+        for (COSName name : resources.getXObjectNames()) {
+            try {
+                PDXObject xObject = resources.getXObject(name);
+                if (xObject instanceof PDImageXObject) {
+                    images.add((PDImageXObject) xObject);
+                } else if (xObject instanceof PDFormXObject) {
+                    addEmbeddedImages(((PDFormXObject) xObject).getResources(), images, depth + 1);
+                }
+            } catch (IOException e) {
+                // Damaged resource, rendering the page may still work.
+            }
+        }
+    }
+
+    /**
+     * Gets the parsed document.
+     *
+     * @return parsed document
+     */
+    public PDDocument getDocument() {
+        return pdfDoc;
+    }
+
+    /**
+     * Closes the document.
+     *
+     * @throws IOException if unable to close the document
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        pdfDoc.close();
+    }
+}
@@ -0,0 +1,133 @@
+package nl.ls31.qrscan.core;
+
+import nl.ls31.qrscan.model.PdfScanResult;
+import org.tinylog.Logger;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Pattern;
+
+/**
+ * Moves PDF files to the output directory and renames them, based on their QR code.
+ *
+ * <p>
+ * For example, if a PDF file had the QR code '001', it is moved to a sub directory 001 in the output directory and
+ * renamed to 001_1.pdf. The next file with QR code '001' is saved as 001_2.pdf, etc.
+ * </p>
+ *
+ * <p>
+ * Several threads may rename files at the same time. Claiming a target name is race-free: names are handed out by a
+ * TargetNameIndex, which is seeded with a single scan of the output directory, and a file is never moved onto an
+ * existing file. If another process takes a name in the meantime, the next suffix is used. Renaming a file then costs
+ * a single move.
+ * </p>
+ *
+ * @author Lars Steggink
+ */
+public class PdfFileRenamer {
+    private final Path outputDir;
+    private volatile TargetNameIndex targetNames;
+
+    /**
+     * @param outputDir main output directory for renamed PDF files
+     */
+    public PdfFileRenamer(Path outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    /**
+     * Creates the output directory, if it does not exist yet, and indexes the names that are already taken. Call this
+     * before renaming files.
+     *
+     * @throws IOException if unable to create or read the output directory
+     */
+    public void prepareOutputDirectory() throws IOException {
+        if (!Files.exists(outputDir)) {
+            Files.createDirectory(outputDir);
+            Logger.error("Output directory did not exist and has been created.");
+        }
+        targetNames = TargetNameIndex.scan(outputDir);
+    }
+
+    /**
+     * Moves and renames a PDF file of which the QR code was found. The new file path is remembered in the result.
+     *
+     * @param scanResult scan result, with a QR code
+     * @return new file path
+     * @throws IOException if unable to create the sub directory or to move the file
+     */
+    public Path rename(PdfScanResult scanResult) throws IOException {
+        if (targetNames == null) {
+            throw new IllegalStateException("Output directory was not prepared.");
+        }
+        RenameEvent event = new RenameEvent();
+        event.begin();
+        Path targetPath = null;
+        try {
+            while (true) {
+                targetPath = targetNames.claim(scanResult.getQrCode());
+                event.tries++;
+                try {
+                    // Without REPLACE_EXISTING, the move fails if the name was taken by someone else.
+                    Path resultPath = Files.move(scanResult.getInputFilePath(), targetPath);
+                    scanResult.setOutputFilePath(resultPath);
+                    event.succeeded = true;
+                    return resultPath;
+                } catch (FileAlreadyExistsException e) {
+                    // Taken by another process (or differs only in case), try the next suffix.
+                }
+            }
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.file = scanResult.getInputFilePath().toString();
+                event.target = String.valueOf(targetPath);
+                event.qrCode = scanResult.getQrCode();
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Checks whether a directory is (within) the output directory, while walking an input directory that is not. Files
+     * are renamed while the input directory is still being walked, so such directories must be skipped.
+     *
+     * @param dir      directory found while walking
+     * @param inputDir input directory that is walked
+     * @return whether the directory must be skipped
+     */
+    public boolean isOutputSubtree(Path dir, Path inputDir) {
+        Path output = outputDir.toAbsolutePath().normalize();
+        return dir.toAbsolutePath().normalize().startsWith(output)
+                && !inputDir.toAbsolutePath().normalize().startsWith(output);
+    }
+
+    /**
+     * Checks whether a file has been renamed by this (or an earlier) renamer, e.g. outputDir/001/001_3.pdf. If the
+     * input directory is (within) the output directory, such files must be skipped while walking it.
+     *
+     * @param file file path
+     * @return whether the file is a renamed file in the output directory
+     */
+    public boolean isRenamedFile(Path file) {
+        Path absolute = file.toAbsolutePath().normalize();
+        Path subDir = absolute.getParent();
+        if (subDir == null || subDir.getFileName() == null
+                || !outputDir.toAbsolutePath().normalize().equals(subDir.getParent())) {
+            return false;
+        }
+        String qr = subDir.getFileName().toString();
+        return Pattern.matches(Pattern.quote(qr) + "_\\d{1,9}\\.pdf", absolute.getFileName().toString());
+    }
+
+    /**
+     * Gets the main output directory.
+     *
+     * @return output directory
+     */
+    public Path getOutputDirectory() {
+        return outputDir;
+    }
+}
@@ -1,12 +1,11 @@
 package nl.ls31.qrscan.core;
 
-import com.google.zxing.*;
-import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
-import com.google.zxing.common.HybridBinarizer;
-import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.rendering.ImageType;
-import org.apache.pdfbox.rendering.PDFRenderer;
+import com.google.zxing.NotFoundException;
+import nl.ls31.qrscan.model.PdfFileInfo;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -16,10 +15,16 @@ import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
 import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
-import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
 
 /**
  * PDF file with a QR code.
@@ -32,7 +37,15 @@ public class PdfScanner {
      */
     final static public String FILE_ATTRIBUTE = "custom.qrcode";
     private final Path docPath;
+    private final BasicFileAttributes fileAttributes;
     private final Map<Integer, String> qrCodeMap;
+    private volatile int numberOfPages = -1;
+    private volatile PdfFileInfo.FileAttributeState fileAttributeState = PdfFileInfo.FileAttributeState.NOT_CHECKED;
+    private volatile String decodeDescription = "";
+    private volatile String contentHash;
+    private volatile int foundPage;
+    private final AtomicInteger attemptCount = new AtomicInteger();
+    private final AtomicLong imageBytes = new AtomicLong();
 
     /**
      * PDF file containing a QR code.
@@ -40,7 +53,19 @@ public class PdfScanner {
      * @param docPath Path of the document.
      */
     public PdfScanner(Path docPath) {
+        this(docPath, null);
+    }
+
+    /**
+     * PDF file containing a QR code, of which the basic file attributes are already known (e.g. from a directory
+     * walk). These are used for the meta data in the result, so the file does not need to be read again.
+     *
+     * @param docPath        Path of the document.
+     * @param fileAttributes Basic file attributes of the document, or null if not known yet.
+     */
+    public PdfScanner(Path docPath, BasicFileAttributes fileAttributes) {
         this.docPath = docPath;
+        this.fileAttributes = fileAttributes;
         this.qrCodeMap = new HashMap<>();
     }
 
@@ -70,33 +95,80 @@ public class PdfScanner {
         return Files.readAttributes(docPath, BasicFileAttributes.class).creationTime();
     }
 
+    /**
+     * Gets the meta data of this file, as captured so far. The basic file attributes are taken from the directory walk
+     * if available. The number of pages is only known if the document was opened (e.g. while scanning), so it is
+     * unknown if the QR code was taken from the file attribute or the scan cache.
+     *
+     * @return meta data
+     */
+    public PdfFileInfo getFileInfo() {
+        BasicFileAttributes attrs = fileAttributes;
+        if (attrs == null) {
+            try {
+                attrs = Files.readAttributes(docPath, BasicFileAttributes.class);
+            } catch (IOException e) {
+                // If the attributes could not be determined, keep them blank.
+            }
+        }
+        int pageCount = numberOfPages >= 0 ? numberOfPages : PdfFileInfo.UNKNOWN_PAGE_COUNT;
+        if (attrs == null) {
+            return new PdfFileInfo(docPath, -1, null, null, pageCount, fileAttributeState);
+        }
+        return new PdfFileInfo(docPath, attrs.size(), attrs.creationTime(), attrs.lastModifiedTime(), pageCount,
+                fileAttributeState);
+    }
+
     /**
      * Gets the number of pages.
      *
+     * <p>
+     * If the document was already opened in a session (e.g. while scanning), the page count remembered from that
+     * session is returned and the file is not parsed again.
+     * </p>
+     *
      * @return number of pages
      * @throws IOException if unable to determine number of pages
      */
     public int getNumberOfPages() throws IOException {
-        PDDocument pdfDoc = PDDocument.load(docPath.toFile());
-        int numberOfPages = pdfDoc.getNumberOfPages();
-        pdfDoc.close();
+        if (numberOfPages < 0) {
+            try (PdfDocumentSession session = openSession()) {
+                return session.getNumberOfPages();
+            }
+        }
         return numberOfPages;
     }
 
     /**
-     * Renders a page.
+     * Opens and parses the document once. The page count is remembered for later use.
      *
-     * @param pageIndex page to render
-     * @param dpi       renderer DPI
-     * @return render of the page
-     * @throws IOException if failed to read the file
+     * <p>
+     * The caller is responsible for closing the session.
+     * </p>
+     *
+     * @return document session
+     * @throws IOException if unable to read or parse the file
      */
-    private BufferedImage getPageImage(int pageIndex, int dpi) throws IOException {
-        PDDocument pdfDoc = PDDocument.load(docPath.toFile());
-        PDFRenderer renderer = new PDFRenderer(pdfDoc);
-        BufferedImage image = renderer.renderImageWithDPI(pageIndex - 1, dpi, ImageType.BINARY);
-        pdfDoc.close();
-        return image;
+    public PdfDocumentSession openSession() throws IOException {
+        return openSession(MemoryUsageSetting.setupMainMemoryOnly());
+    }
+
+    /**
+     * Opens and parses the document once, with limits on the use of main memory. The page count is remembered for
+     * later use.
+     *
+     * <p>
+     * The caller is responsible for closing the session.
+     * </p>
+     *
+     * @param memoryUsage memory usage setting for PDFBox
+     * @return document session
+     * @throws IOException if unable to read or parse the file
+     */
+    public PdfDocumentSession openSession(MemoryUsageSetting memoryUsage) throws IOException {
+        PdfDocumentSession session = new PdfDocumentSession(docPath, memoryUsage);
+        numberOfPages = session.getNumberOfPages();
+        return session;
     }
 
     /**
@@ -126,6 +198,7 @@ public class PdfScanner {
      * <li>check if QR code was already scanned/found in the current run
      * (unlikely, but fast)</li>
      * <li>check the file attribute (if enabled, fast),</li>
+     * <li>check the scan cache (if enabled, costs a hash of the file),</li>
      * <li>scan the PDF file itself (slow).</li>
      * </ol>
      *
@@ -149,35 +222,207 @@ public class PdfScanner {
      */
     public String getQRCode(int page, boolean useQRCodeFileAttribute, boolean writeFileAttributes)
             throws IOException, NotFoundException {
+        ScanOptions options = new ScanOptions();
+        options.setQrCodePage(page);
+        options.setUseFileAttributes(useQRCodeFileAttribute);
+        options.setWriteFileAttributes(writeFileAttributes);
+        return getQRCode(options);
+    }
+
+    /**
+     * Extracts and decodes the QR code from the PDF file, as specified by the scan options.
+     *
+     * @param options scan options, e.g. page and region where QR code is placed
+     * @return QR code that was extracted
+     * @throws IOException       if reading file failed or no such page
+     * @throws NotFoundException if QR code recognition failed
+     * @see #getQRCode(int, boolean, boolean)
+     */
+    public String getQRCode(ScanOptions options) throws IOException, NotFoundException {
+        String qrCode = getKnownQRCode(options);
+        if (qrCode != null) {
+            return qrCode;
+        }
+        return scanDocument(options);
+    }
+
+    /**
+     * Gets the QR code only if it is already known, i.e. without scanning the PDF file: from the current run, the file
+     * attribute (if enabled) or the scan cache (if enabled). These are all fast.
+     *
+     * @param options scan options
+     * @return QR code, or null if not known
+     * @throws IOException if unable to read the file for the scan cache
+     * @see #getQRCode(ScanOptions)
+     */
+    public String getKnownQRCode(ScanOptions options) throws IOException {
+        PageSelection pages = options.getPageSelection();
+        foundPage = pages.getNominalPage();
         // Use a stored value in available for speed.
-        if (qrCodeMap.containsKey(page)) {
-            return qrCodeMap.get(page);
+        if (pages.isSinglePage() && qrCodeMap.containsKey(foundPage)) {
+            return qrCodeMap.get(foundPage);
         }
 
         // Use an available file attribute for speed.
-        if (useQRCodeFileAttribute && hasQRCodeFileAttribute()) {
-            return getQRCodeFileAttribute();
+        ScanMetrics metrics = options.getMetrics();
+        FileScanEvent event = new FileScanEvent();
+        event.begin();
+        if (options.getUseFileAttributes()) {
+            long start = System.nanoTime();
+            try {
+                String qrCode = getQRCodeFileAttribute();
+                fileAttributeState = PdfFileInfo.FileAttributeState.PRESENT;
+                commitFileScanEvent(event, "file attribute", qrCode);
+                return qrCode;
+            } catch (IOException e) {
+                fileAttributeState = PdfFileInfo.FileAttributeState.ABSENT;
+            } finally {
+                metrics.record(ScanMetrics.Stage.ATTRIBUTE_READ, start);
+            }
+        }
+
+        // Use the scan cache, which also recognises copies of files that were scanned before.
+        ScanCache scanCache = options.getScanCache();
+        if (scanCache != null) {
+            ScanCache.Entry entry = scanCache.get(getContentHash(), options);
+            if (entry != null) {
+                foundPage = entry.getPage();
+                decodeDescription = "scan cache";
+                qrCodeMap.put(foundPage, entry.getQrCode());
+                if (options.getWriteFileAttributes() && !hasQRCodeFileAttribute()) {
+                    // Restore an attribute that was lost, e.g. by copying the file.
+                    long start = System.nanoTime();
+                    try {
+                        setQRCodeFileAttribute(entry.getQrCode());
+                        fileAttributeState = PdfFileInfo.FileAttributeState.WRITTEN;
+                    } catch (Exception e) {
+                        // Don't care that much.
+                    } finally {
+                        metrics.record(ScanMetrics.Stage.ATTRIBUTE_WRITE, start);
+                    }
+                }
+                commitFileScanEvent(event, "scan cache", entry.getQrCode());
+                return entry.getQrCode();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Scans the PDF file itself for the QR code (slow), without checking the file attribute or the scan cache first.
+     * Use this after getKnownQRCode() returned nothing.
+     *
+     * @param options scan options, e.g. page and region where QR code is placed
+     * @return QR code that was extracted
+     * @throws IOException       if reading file failed or no such page
+     * @throws NotFoundException if QR code recognition failed
+     * @see #getQRCode(ScanOptions)
+     */
+    public String scanDocument(ScanOptions options) throws IOException, NotFoundException {
+        PageSelection pages = options.getPageSelection();
+        foundPage = pages.getNominalPage();
+
+        // No quick solutions, so lets scan! The document is parsed only once for all attempts.
+        ScanMetrics metrics = options.getMetrics();
+        FileScanEvent event = new FileScanEvent();
+        attemptCount.set(0);
+        imageBytes.set(0);
+        event.begin();
+        PageHit hit = null;
+        long loadStart = System.nanoTime();
+        try (PdfDocumentSession session = openSession(options.createMemoryUsageSetting())) {
+            metrics.record(ScanMetrics.Stage.LOAD, loadStart);
+            List<Integer> candidatePages = pages.resolve(session.getNumberOfPages());
+            event.pagesProbed = candidatePages.size();
+            if (candidatePages.isEmpty()) {
+                throw new IOException("Page does not exist!");
+            }
+            if (candidatePages.size() == 1) {
+                hit = scanQRCode(session, candidatePages.get(0), options, () -> false);
+            } else {
+                hit = probePages(session, candidatePages, options);
+            }
+        } finally {
+            event.attempts = attemptCount.get();
+            event.imageBytes = imageBytes.get();
+            if (hit != null) {
+                event.page = hit.page;
+                event.successfulAttempt = hit.description;
+            }
+            commitFileScanEvent(event, "scan", hit == null ? null : hit.qrCode);
         }
+        String qrCode = hit.qrCode;
+        foundPage = hit.page;
+        decodeDescription = hit.description;
+        qrCodeMap.put(hit.page, qrCode);
 
-        if (page > getNumberOfPages()) {
-            throw new IOException("Page does not exist!");
+        ScanCache scanCache = options.getScanCache();
+        if (scanCache != null) {
+            try {
+                scanCache.put(getContentHash(), options, qrCode, hit.page);
+            } catch (IOException e) {
+                // Don't care that much, the file is scanned again next time.
+            }
         }
-        // No quick solutions, so lets scan!
-        String qrCode = scanQRCode(page);
-        qrCodeMap.put(page, qrCode);
 
-        if (writeFileAttributes) {
+        if (options.getWriteFileAttributes()) {
             // QR code was found through scanning directly, or after the current
             // File Attribute proved invalid, so lets try to update
+            long start = System.nanoTime();
             try {
                 setQRCodeFileAttribute(qrCode);
+                fileAttributeState = PdfFileInfo.FileAttributeState.WRITTEN;
             } catch (Exception e) {
                 // Don't care that much.
+            } finally {
+                metrics.record(ScanMetrics.Stage.ATTRIBUTE_WRITE, start);
             }
         }
         return qrCode;
     }
 
+    /**
+     * Ends and commits a Flight Recorder event for this file, if it is being recorded.
+     *
+     * @param event  event, begun when getting the QR code started
+     * @param source where the QR code was taken from
+     * @param qrCode QR code, or null if not found
+     */
+    private void commitFileScanEvent(FileScanEvent event, String source, String qrCode) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = docPath.toString();
+            event.size = fileAttributes != null ? fileAttributes.size() : docPath.toFile().length();
+            event.source = source;
+            event.pageCount = Math.max(numberOfPages, 0);
+            event.qrCode = qrCode;
+            event.commit();
+        }
+    }
+
+    /**
+     * Gets the hash of the contents of the file, for the scan cache. The hash is calculated only once.
+     *
+     * @return hash
+     * @throws IOException if unable to read the file
+     */
+    private String getContentHash() throws IOException {
+        if (contentHash == null) {
+            contentHash = ScanCache.hashFile(docPath);
+        }
+        return contentHash;
+    }
+
+    /**
+     * Gets the page where the QR code was found by the last call to getQRCode(). If the QR code was taken from the
+     * file attribute or not found at all, this is the first page of the page selection (or 0 if unknown).
+     *
+     * @return page (starting at 1), or 0
+     */
+    public int getFoundPage() {
+        return foundPage;
+    }
+
     /**
      * Gets the QR code from the file attribute.
      *
@@ -235,45 +480,323 @@ public class PdfScanner {
     }
 
     /**
-     * Scans for and decodes QR code from page render image.
+     * Gets a description of how the QR code was found by the last scan, e.g. "page 1, 200 DPI (Full page), HYBRID".
+     * This is useful to tune the decode chain and DPI ladder.
+     *
+     * @return description, or an empty string if the QR code was not found by scanning
+     */
+    public String getDecodeDescription() {
+        return decodeDescription;
+    }
+
+    /**
+     * Scans several pages for a QR code.
+     *
+     * <p>
+     * If a page probe executor is available, the pages are probed in parallel. Access to the document itself is
+     * serialized by the session, but decoding (the larger part of the work) runs in parallel. As soon as a page yields
+     * a QR code, the probes of all pages later in the selection stop. Probes of earlier pages continue, so the first
+     * page in the selection with a QR code always wins, regardless of timing.
+     * </p>
+     *
+     * @param session opened document
+     * @param pages   pages to probe, in order of preference
+     * @param options scan options
+     * @return QR code and page where it was found
+     * @throws NotFoundException if QR code recognition failed on all pages
+     * @throws IOException       if reading file failed
+     */
+    private PageHit probePages(PdfDocumentSession session, List<Integer> pages, ScanOptions options)
+            throws NotFoundException, IOException {
+        ExecutorService executor = options.getPageProbeExecutor();
+        if (executor == null) {
+            // No parallel probing, just try one page after another.
+            for (int page : pages) {
+                try {
+                    return scanQRCode(session, page, options, () -> false);
+                } catch (NotFoundException e) {
+                    // Try next page.
+                }
+            }
+            throw NotFoundException.getNotFoundInstance();
+        }
+
+        // Index (in the page list) of the first page where a QR code was found so far.
+        AtomicInteger firstHit = new AtomicInteger(Integer.MAX_VALUE);
+        List<Future<PageHit>> probes = new ArrayList<>();
+        for (int i = 0; i < pages.size(); i++) {
+            int index = i;
+            probes.add(executor.submit(() -> {
+                try {
+                    PageHit hit = scanQRCode(session, pages.get(index), options, () -> firstHit.get() < index);
+                    firstHit.accumulateAndGet(index, Math::min);
+                    return hit;
+                } catch (NotFoundException e) {
+                    return null;
+                }
+            }));
+        }
+
+        // Wait for all probes (stopped ones return quickly), as the session is closed afterwards.
+        PageHit result = null;
+        IOException error = null;
+        boolean interrupted = false;
+        for (Future<PageHit> probe : probes) {
+            while (true) {
+                try {
+                    PageHit hit = probe.get();
+                    if (result == null && hit != null) {
+                        result = hit;
+                    }
+                    break;
+                } catch (InterruptedException e) {
+                    // Stop all probes, but still wait for them to finish.
+                    interrupted = true;
+                    firstHit.set(-1);
+                } catch (ExecutionException e) {
+                    if (error == null) {
+                        error = e.getCause() instanceof IOException
+                                ? (IOException) e.getCause()
+                                : new IOException("Unable to scan page.", e.getCause());
+                    }
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while scanning pages.");
+        }
+        if (result != null) {
+            return result;
+        }
+        if (error != null) {
+            throw error;
+        }
+        throw NotFoundException.getNotFoundInstance();
+    }
+
+    /**
+     * Scans for and decodes QR code from the page.
      *
+     * <p>
+     * First, the images embedded in the page are decoded directly, which is much faster than rendering. If that fails,
+     * the page is rendered at several DPI settings (see DpiLadder). If a region is specified, only that region is
+     * decoded, and the full page is only scanned if that fails. Every image is decoded with the steps of the decode
+     * chain, cheap steps first.
+     * </p>
+     *
+     * @param session   opened document
      * @param pageIndex page to render
+     * @param options   scan options with region, DPI ladder and decode chain
+     * @param stop      checked before every attempt: whether to give up on this page
      * @return QR code that was decoded.
-     * @throws NotFoundException if QR code recognition failed
+     * @throws NotFoundException if QR code recognition failed (or was stopped)
      * @throws IOException       if reading file failed
      */
-    private String scanQRCode(int pageIndex) throws NotFoundException, IOException {
-        // Hints for scanning
-        Vector<BarcodeFormat> decodeFormat = new Vector<>();
-        decodeFormat.add(BarcodeFormat.QR_CODE);
-        Hashtable<DecodeHintType, Object> hintMap = new Hashtable<>();
-        hintMap.put(DecodeHintType.TRY_HARDER, true);
-        hintMap.put(DecodeHintType.POSSIBLE_FORMATS, decodeFormat);
-        MultiFormatReader qrcodeReader = new MultiFormatReader();
-        qrcodeReader.setHints(hintMap);
-
-        // We try for several images of the PDF page at several DPI settings,
-        // starting at the lowest setting, this might help for speed...
-        int[] dpiSettings = {150, 200, 250, 300};
-        for (int i = 0; i < dpiSettings.length; i++) {
-            try {
-                // Try lowest DPI first.
-                BufferedImage pageImage = getPageImage(pageIndex, dpiSettings[i]);
-                LuminanceSource source = new BufferedImageLuminanceSource(pageImage);
-                BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
-                // By using decodeWithState, we keep the Hints that we set earlier.
-                Result result = qrcodeReader.decodeWithState(bitmap);
-                return result.getText();
+    private PageHit scanQRCode(PdfDocumentSession session, int pageIndex, ScanOptions options, BooleanSupplier stop)
+            throws NotFoundException, IOException {
+        PageScanEvent event = new PageScanEvent();
+        event.begin();
+        try {
+            PageHit hit = scanPage(session, pageIndex, options, stop, event);
+            event.successfulAttempt = hit.description;
+            return hit;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.file = docPath.toString();
+                event.page = pageIndex;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Scans for and decodes QR code from the page, as described for scanQRCode().
+     *
+     * @param session   opened document
+     * @param pageIndex page to render
+     * @param options   scan options with region, DPI ladder and decode chain
+     * @param stop      checked before every attempt: whether to give up on this page
+     * @param event     Flight Recorder event of this page, to which every attempt is added
+     * @return QR code that was decoded.
+     * @throws NotFoundException if QR code recognition failed (or was stopped)
+     * @throws IOException       if reading file failed
+     */
+    // The render budget leases are only held (and released at the end of their try block), never referenced.
+    @SuppressWarnings("try")
+    private PageHit scanPage(PdfDocumentSession session, int pageIndex, ScanOptions options, BooleanSupplier stop,
+                             PageScanEvent event) throws NotFoundException, IOException {
+        ScanRegion region = options.getScanRegion();
+        ScanMetrics metrics = options.getMetrics();
+
+        // Fast path: scanned pages are usually a single embedded image, no need to render. Such an image normally
+        // covers the whole (unrotated) page, so the region can be cut out of it directly.
+        boolean cropEmbedded = !region.isFullPage() && session.getPageRotation(pageIndex) == 0;
+        for (PDImageXObject embedded : session.getEmbeddedImages(pageIndex)) {
+            long pixels = (long) embedded.getWidth() * embedded.getHeight();
+            try (RenderBudget.Lease lease = leasePixels(options, pixels)) {
+                long start = System.nanoTime();
+                BufferedImage embeddedImage = session.readImage(embedded);
+                metrics.record(ScanMetrics.Stage.EXTRACT_IMAGE, start);
+                if (cropEmbedded) {
+                    Rectangle bounds = region.getBounds(embeddedImage.getWidth(), embeddedImage.getHeight())
+                            .intersection(new Rectangle(embeddedImage.getWidth(), embeddedImage.getHeight()));
+                    // The region of a tiny image may be empty after rounding, then only the whole image is tried.
+                    if (!bounds.isEmpty()) {
+                        try {
+                            BufferedImage crop = embeddedImage.getSubimage(bounds.x, bounds.y, bounds.width,
+                                    bounds.height);
+                            return decode(options, crop, pageIndex, "embedded image (" + region + ")", stop, event);
+                        } catch (NotFoundException e) {
+                            // Maybe the image does not cover the whole page, try the whole image.
+                        }
+                    }
+                }
+                return decode(options, embeddedImage, pageIndex, "embedded image", stop, event);
             } catch (NotFoundException e) {
-                // Attempt failed. Try next resolution.
-                // What if this fails again and again?
-                // A NotFoundException is thrown.
-                if (i == dpiSettings.length - 1) {
+                // Try next image, or render the page.
+            } catch (IOException e) {
+                // Unsupported, damaged or too large image, rendering the page may still work.
+                if (Thread.currentThread().isInterrupted()) {
                     throw e;
                 }
             }
         }
-        // This should never happen, ever...
-        return null;
+
+        // Render the region first. Only if that fails, fall back to the full page.
+        try {
+            return scanRenderedPage(session, pageIndex, region, options, stop, event);
+        } catch (NotFoundException e) {
+            if (region.isFullPage()) {
+                throw e;
+            }
+        }
+        return scanRenderedPage(session, pageIndex, ScanRegion.FULL_PAGE, options, stop, event);
+    }
+
+    /**
+     * Scans for and decodes QR code from renders of (a region of) the page.
+     *
+     * @param session   opened document
+     * @param pageIndex page to render
+     * @param region    region of the page to render
+     * @param options   scan options with DPI ladder and decode chain
+     * @param stop      checked before every attempt: whether to give up on this page
+     * @param event     Flight Recorder event of this page, to which every attempt is added
+     * @return QR code that was decoded.
+     * @throws NotFoundException if QR code recognition failed (or was stopped)
+     * @throws IOException       if reading file failed
+     */
+    // The render budget leases are only held (and released at the end of their try block), never referenced.
+    @SuppressWarnings("try")
+    private PageHit scanRenderedPage(PdfDocumentSession session, int pageIndex, ScanRegion region, ScanOptions options,
+                                     BooleanSupplier stop, PageScanEvent event) throws NotFoundException, IOException {
+        // We try for several images of the PDF page at several DPI settings. The ladder puts the settings that were
+        // most successful during this run first.
+        DpiLadder dpiLadder = options.getDpiLadder();
+        RenderBudget budget = options.getRenderBudget();
+        List<Integer> dpis = dpiLadder.getOrder();
+        // Failed attempts only count against a DPI setting once another setting decodes this page. Otherwise the page
+        // may simply have no QR code.
+        List<Integer> failedDpis = new ArrayList<>();
+        int tooLarge = 0;
+        for (int dpi : dpis) {
+            if (stop.getAsBoolean()) {
+                break;
+            }
+            Rectangle bounds = session.getRenderBounds(pageIndex, dpi, region);
+            long pixels = (long) bounds.width * bounds.height;
+            if (budget != null && !budget.fits(pixels)) {
+                // Too large at this resolution, maybe a lower DPI setting fits.
+                tooLarge++;
+                continue;
+            }
+            try (RenderBudget.Lease lease = leasePixels(options, pixels)) {
+                long start = System.nanoTime();
+                BufferedImage pageImage = session.renderPage(pageIndex, dpi, region);
+                options.getMetrics().recordRender(dpi, start);
+                PageHit hit = decode(options, pageImage, pageIndex, dpi + " DPI (" + region + ")", stop,
+                        event);
+                dpiLadder.recordSuccess(dpi, failedDpis);
+                return hit;
+            } catch (NotFoundException e) {
+                // Attempt failed (unless it was stopped). Try next resolution.
+                if (!stop.getAsBoolean()) {
+                    failedDpis.add(dpi);
+                }
+            }
+        }
+        if (tooLarge == dpis.size()) {
+            throw new PageTooLargeException("Page " + pageIndex + " is too large to render within the memory limits.");
+        }
+        // What if this fails again and again? A NotFoundException is thrown.
+        throw NotFoundException.getNotFoundInstance();
+    }
+
+    /**
+     * Leases pixels from the render budget, if memory use is limited.
+     *
+     * @param options scan options with the render budget
+     * @param pixels  size of the image (px)
+     * @return lease, or null if memory use is not limited
+     * @throws IOException if the image is larger than the whole budget, or if interrupted while waiting
+     */
+    private RenderBudget.Lease leasePixels(ScanOptions options, long pixels) throws IOException {
+        RenderBudget budget = options.getRenderBudget();
+        if (budget == null) {
+            return null;
+        }
+        try {
+            return budget.acquire(pixels);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for memory.", e);
+        }
+    }
+
+    /**
+     * Decodes a QR code from an image.
+     *
+     * @param options scan options with the decode chain
+     * @param image   image to decode
+     * @param page    page of the image
+     * @param source  description of the image
+     * @param stop    whether to give up without decoding
+     * @param event   Flight Recorder event of the page, to which this attempt is added
+     * @return QR code that was decoded
+     * @throws NotFoundException if QR code recognition failed (or was stopped)
+     */
+    private PageHit decode(ScanOptions options, BufferedImage image, int page, String source, BooleanSupplier stop,
+                           PageScanEvent event) throws NotFoundException {
+        if (stop.getAsBoolean()) {
+            throw NotFoundException.getNotFoundInstance();
+        }
+        long bytes = (long) image.getWidth() * image.getHeight() * image.getColorModel().getPixelSize() / 8;
+        attemptCount.incrementAndGet();
+        imageBytes.addAndGet(bytes);
+        event.attemptCount++;
+        event.imageBytes += bytes;
+        if (event.isEnabled()) {
+            event.attempts = event.attempts == null ? source : event.attempts + ", " + source;
+        }
+        DecodeChain.DecodeResult result = options.getDecodeChain().decode(image, options.getMetrics());
+        return new PageHit(result.getQrCode(), page, "page " + page + ", " + source + ", " + result.getStep());
+    }
+
+    /**
+     * A QR code found on a page.
+     */
+    private static class PageHit {
+        private final String qrCode;
+        private final int page;
+        private final String description;
+
+        PageHit(String qrCode, int page, String description) {
+            this.qrCode = qrCode;
+            this.page = page;
+            this.description = description;
+        }
     }
 }
@@ -0,0 +1,228 @@
+package nl.ls31.qrscan.core;
+
+import com.google.zxing.WriterException;
+import org.tinylog.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * Creates GIF image files displaying QR codes (with or without an human-readable annotation), from a text file with
+ * every 'code' on a different line.
+ *
+ * <p>
+ * To prevent difficulties in handling the QR codes later on, only A-z, space, - or _ are allowed as 'code'. This class
+ * does not depend on JavaFX, so it can be used both by CreateImagesTask and on the command line.
+ * </p>
+ *
+ * <p>
+ * Images are created in parallel: encoding the QR code, drawing and encoding the GIF image (CPU work) run on a pool
+ * with a thread per core, and the files are written by a few separate threads, so writing overlaps with encoding. The
+ * number of images in progress is bounded, so memory use does not depend on the number of codes.
+ * </p>
+ *
+ * @author Lars Steggink
+ */
+public class QrcodeImageCreator {
+    /**
+     * Number of threads writing files. Writing is mostly waiting for the file system.
+     */
+    final static private int WRITER_COUNT = 4;
+    /**
+     * Number of images in progress (encoded or waiting to be written) per encoding thread.
+     */
+    final static private int IN_PROGRESS_PER_THREAD = 8;
+    private final Path outputDir;
+    private final int size;
+    private final boolean withText;
+    private final AtomicInteger success = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger illegal = new AtomicInteger();
+
+    /**
+     * @param outputDir directory for image output
+     * @param size      size (height and width) of the QR code. Note that the height of the actual GIF will be larger if
+     *                  annotation is requested.
+     * @param withText  whether the code should be placed as regular text below the QR code
+     */
+    public QrcodeImageCreator(Path outputDir, int size, boolean withText) {
+        this.outputDir = outputDir;
+        this.size = size;
+        this.withText = withText;
+    }
+
+    /**
+     * Reads the list with QR codes from the code text file.
+     *
+     * @param codeFile the code text file
+     * @return code list
+     * @throws IOException if unable to read the code file
+     */
+    public static Set<String> readQRCodesFromFile(Path codeFile) throws IOException {
+        Set<String> codeList = new HashSet<>(Files.readAllLines(codeFile));
+        if (codeList.isEmpty()) {
+            Logger.warn("The code file seems empty.");
+        }
+        return codeList;
+    }
+
+    /**
+     * Creates the output directory if needed.
+     *
+     * @throws IOException if unable to create the output directory
+     */
+    public void createOutputDirectory() throws IOException {
+        if (!Files.exists(outputDir)) {
+            Files.createDirectory(outputDir);
+            Logger.info("Output directory did not exist and has been created.");
+        }
+    }
+
+    /**
+     * Create images from a list of codes, in parallel. Codes with illegal characters are skipped. If interrupted, no new
+     * images are started, and the images in progress are finished.
+     *
+     * @param codeList list of codes
+     * @param progress receives the number of codes handled so far, in increasing order (from several threads)
+     * @return list of image paths
+     */
+    public List<Path> createImages(Set<String> codeList, LongConsumer progress) {
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        ExecutorService encoders = Executors.newFixedThreadPool(threadCount);
+        ExecutorService writers = Executors.newFixedThreadPool(WRITER_COUNT);
+        Semaphore inProgress = new Semaphore(threadCount * IN_PROGRESS_PER_THREAD);
+        List<Path> imageList = Collections.synchronizedList(new ArrayList<>());
+        AtomicLong handled = new AtomicLong();
+        Runnable codeHandled = () -> {
+            // Report in order, so the progress never goes back.
+            synchronized (handled) {
+                progress.accept(handled.incrementAndGet());
+            }
+        };
+        try {
+            for (String code : codeList) {
+                if (!PdfScanner.isValidQRCode(code)) {
+                    Logger.warn("Skipped code " + code + " with illegal characters. ");
+                    illegal.incrementAndGet();
+                    codeHandled.run();
+                    continue;
+                }
+                inProgress.acquire();
+                encoders.execute(() -> {
+                    // The permit is released and the code is counted by the writer, or here if it never gets there.
+                    boolean queued = false;
+                    try {
+                        byte[] gif = QrcodeImageWriter.encodeGIF(code, size, withText);
+                        writers.execute(() -> {
+                            try {
+                                imageList.add(writeImage(code, gif));
+                                success.incrementAndGet();
+                            } catch (IOException | RuntimeException e) {
+                                Logger.error(e, "Unable to save file for code \"" + code + "\". ");
+                                failed.incrementAndGet();
+                            } finally {
+                                inProgress.release();
+                                codeHandled.run();
+                            }
+                        });
+                        queued = true;
+                    } catch (WriterException | IOException | RuntimeException e) {
+                        // E.g. an IllegalArgumentException of ZXing or ImageIO for an invalid size.
+                        Logger.error(e, "Unable to encode \"" + code + "\". ");
+                        failed.incrementAndGet();
+                    } finally {
+                        if (!queued) {
+                            inProgress.release();
+                            codeHandled.run();
+                        }
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Logger.warn("Creating images was interrupted.");
+        } finally {
+            awaitTermination(encoders);
+            // All writes are queued once the encoders are done.
+            awaitTermination(writers);
+        }
+        return new ArrayList<>(imageList);
+    }
+
+    /**
+     * Waits until all work of a pool is done, even if interrupted.
+     *
+     * @param pool pool
+     */
+    private static void awaitTermination(ExecutorService pool) {
+        pool.shutdown();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes an encoded image file. Existing files are not overwritten.
+     *
+     * @param code code for QR code
+     * @param gif  contents of the GIF file
+     * @return path to created image file
+     * @throws IOException if unable to save the image file
+     */
+    private Path writeImage(String code, byte[] gif) throws IOException {
+        Path imagePath = outputDir.resolve(code + ".gif");
+        Files.write(imagePath, gif, StandardOpenOption.CREATE_NEW);
+        return imagePath;
+    }
+
+    /**
+     * Gets the number of images created so far.
+     *
+     * @return number of images
+     */
+    public int getSuccessCount() {
+        return success.get();
+    }
+
+    /**
+     * Gets the number of codes that could not be encoded or saved so far.
+     *
+     * @return number of failed codes
+     */
+    public int getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Gets the number of codes skipped so far because of illegal characters.
+     *
+     * @return number of skipped codes
+     */
+    public int getIllegalCount() {
+        return illegal.get();
+    }
+}
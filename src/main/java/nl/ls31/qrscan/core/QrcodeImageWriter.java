@@ -10,6 +10,7 @@ import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Files;
@@ -37,13 +38,45 @@ public class QrcodeImageWriter {
      */
     public static void writeGIF(Path filePath, String qrCode, int size, boolean withAnnotation)
             throws WriterException, IOException {
-        BitMatrix bitMatrix = encode(qrCode, size);
-        BufferedImage image = createImage(bitMatrix, qrCode, size, withAnnotation);
+        byte[] gif = encodeGIF(qrCode, size, withAnnotation);
         try (OutputStream outputStream = Files.newOutputStream(filePath, StandardOpenOption.CREATE_NEW)) {
-            ImageIO.write(image, "gif", outputStream);
+            outputStream.write(gif);
         }
     }
 
+    /**
+     * Encodes a GIF image containing a specified QR code and (optionally) a small annotation underneath, in memory.
+     * This is all the CPU work of writeGIF(), so the file can be written separately.
+     *
+     * @param qrCode         QR code to be encoded into an image
+     * @param size           size (height and width) of the QR code. Note: height of the actual GIF will be larger if
+     *                       annotation was requested.
+     * @param withAnnotation whether the code should be placed as regular text below the QR code
+     * @return contents of the GIF file
+     * @throws WriterException if encoding QR code into image failed
+     * @throws IOException     if encoding the GIF image failed
+     */
+    static byte[] encodeGIF(String qrCode, int size, boolean withAnnotation) throws WriterException, IOException {
+        BufferedImage image = createImage(qrCode, size, withAnnotation);
+        ByteArrayOutputStream gif = new ByteArrayOutputStream();
+        ImageIO.write(image, "gif", gif);
+        return gif.toByteArray();
+    }
+
+    /**
+     * Creates an image containing a specified QR code and (optionally) a small annotation underneath.
+     *
+     * @param qrCode         QR code to be encoded into an image
+     * @param size           size (height and width) of the QR code. Note: height of the image will be larger if
+     *                       annotation was requested.
+     * @param withAnnotation whether the code should be placed as regular text below the QR code
+     * @return image
+     * @throws WriterException if encoding QR code into image failed
+     */
+    public static BufferedImage createImage(String qrCode, int size, boolean withAnnotation) throws WriterException {
+        return createImage(encode(qrCode, size), qrCode, size, withAnnotation);
+    }
+
     /**
      * Creates the QR image.
      *
@@ -85,14 +118,15 @@ public class QrcodeImageWriter {
     }
 
     /**
-     * Encodes a code string into a bit matrix for a QR code.
+     * Encodes a code string into a bit matrix for a QR code. If the size is smaller than the QR code needs, the matrix
+     * has a single bit per module (e.g. for drawing the QR code as vector graphics).
      *
      * @param qrCode code
      * @param size   size of image
      * @return bit matrix
      * @throws WriterException if encoding QR code into image failed
      */
-    private static BitMatrix encode(String qrCode, int size) throws WriterException {
+    public static BitMatrix encode(String qrCode, int size) throws WriterException {
         // Encoding options.
         Hashtable<EncodeHintType, Object> hintMap = new Hashtable<>();
         hintMap.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.M);
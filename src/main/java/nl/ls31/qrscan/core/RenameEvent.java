@@ -0,0 +1,37 @@
+package nl.ls31.qrscan.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for moving and renaming a single PDF file. The duration of the event is the time spent on the
+ * move, including retries with the next suffix.
+ *
+ * @author Lars Steggink
+ */
+@Name("nl.ls31.qrscan.Rename")
+@Label("Rename")
+@Category("QRScan")
+@Description("Moving and renaming a PDF file by its QR code")
+@StackTrace(false)
+final class RenameEvent extends Event {
+    @Label("File")
+    String file;
+
+    @Label("Target")
+    String target;
+
+    @Label("QR Code")
+    String qrCode;
+
+    @Label("Tries")
+    @Description("Number of target names tried, more than 1 if names were taken by another process")
+    int tries;
+
+    @Label("Succeeded")
+    boolean succeeded;
+}
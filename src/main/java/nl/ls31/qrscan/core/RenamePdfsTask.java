@@ -4,13 +4,17 @@ import nl.ls31.qrscan.model.PdfScanResult;
 import org.tinylog.Logger;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * This task performs the thing mentioned in ScanPdfsTask. However, after all PDFs are scanned for QR codes, the PDFs are
- * then moved to the output directory and renamed.
+ * This task performs the thing mentioned in ScanPdfsTask. However, as soon as the QR code of a PDF is known, the PDF is
+ * moved to the output directory and renamed, while other PDFs are still being scanned.
  *
  * <p>
  * For example, if a PDF file had the QR code '001', it is now renamed to 001_1.pdf and moved to a sub directory 001 in
@@ -36,130 +40,130 @@ import java.util.List;
 public class RenamePdfsTask extends ScanPdfsTask {
 
     final static private String LSEP = System.lineSeparator();
+    /**
+     * Number of threads moving files. Moving is mostly waiting for the file system.
+     */
+    final static private int MOVER_COUNT = 4;
     private final Path outputDir;
 
     /**
-     * This task performs the thing mentioned in ScanPdfsTask. However, after all PDFs are scanned for QR codes, the
-     * PDFs are then moved to the output directory and renamed.
+     * This task performs the thing mentioned in ScanPdfsTask. However, as soon as the QR code of a PDF is known, the
+     * PDF is moved to the output directory and renamed.
      *
-     * @param inputDir            input directory with PDF files
-     * @param outputDir           main output directory for renamed PDF files
-     * @param qrCodePage          page where QR codes are expected in each PDF
-     * @param writeFileAttributes whether to write a custom file attribute after a QR code has been recognised
-     * @param useFileAttributes   whether to use the custom file attribute to get stored QR codes instead of (slow)
-     *                            scanning
-     * @param openLogFile         whether to open the CSV log file at the end
+     * @param inputDir    input directory with PDF files
+     * @param outputDir   main output directory for renamed PDF files
+     * @param options     scan options (e.g. page where QR codes are expected in each PDF)
+     * @param openLogFile whether to open the CSV log file at the end
      */
-    public RenamePdfsTask(Path inputDir, Path outputDir, int qrCodePage, boolean useFileAttributes,
-                          boolean writeFileAttributes, boolean openLogFile) {
-        super(inputDir, qrCodePage, useFileAttributes, writeFileAttributes, openLogFile);
+    public RenamePdfsTask(Path inputDir, Path outputDir, ScanOptions options, boolean openLogFile) {
+        super(inputDir, options, openLogFile);
         this.outputDir = outputDir;
     }
 
-    // TODO extract PdfFileRenamer (putting the logic of renaming and creating subdirs outside of this task)
-
     /**
-     * Iterates over every file, scans for QR codes, then renames.
+     * Iterates over every file, scans for QR codes, and renames every file as soon as its QR code is known.
      *
      * <p>
-     * Note: first, all files are scanned for QR codes, only then renaming starts.
+     * Note: files are moved by separate mover threads while scanning continues. Every result is logged as soon as the
+     * file has been moved, so the order of the CSV log may differ from the order of the results.
      * </p>
      *
      * @return list of results
      */
     @Override
     protected List<PdfScanResult> call() {
-        List<PdfScanner> pdfs = findInputFiles(inputDir);
-        List<PdfScanResult> scanResults = scanInputFiles(pdfs);
+        startMetrics();
         try {
-            List<PdfScanResult> results = renameScanResults(scanResults);
-            logResults(results, outputDir); // TODO put this outside of task
-            return results;
-        } catch (IOException e) {
-            Logger.error("!Unable to create or use output path.");
-            return scanResults;
+            return renameInputDir();
+        } finally {
+            finishMetrics();
         }
     }
 
     /**
-     * Finds an unique filename within the main output directory.
+     * Scans all files and renames every file as soon as its QR code is known. If the output directory cannot be used,
+     * the files are only scanned.
      *
-     * @param scanResult scan result
-     * @return chosen path
-     * @throws IOException if unable to create sub directory
+     * @return list of results
      */
-    private Path findTargetPath(PdfScanResult scanResult) throws IOException {
-        String qr = scanResult.getQrCode();
-
-        // Create sub directory within main output directory.
-        Path subOutputDir = outputDir.resolve(qr);
-        if (!Files.isDirectory(subOutputDir)) {
-            Files.createDirectory(subOutputDir);
+    private List<PdfScanResult> renameInputDir() {
+        PdfFileRenamer renamer = new PdfFileRenamer(outputDir);
+        Logger.info("Renaming starts as soon as QR codes are found." + LSEP + "  Output directory: "
+                + outputDir.getFileName());
+        try {
+            renamer.prepareOutputDirectory();
+        } catch (IOException e) {
+            Logger.error("!Unable to create or use output path.");
+            return scanInputDir(inputDir);
         }
 
-        // Find a file name that is not yet taken by appending _1, _2, _3, etc.
-        // With a low number of files in every directory, this is probably the
-        // fastest approach.
-        for (int i = 1; i <= (Files.list(subOutputDir).count() + 1); i++) {
-            Path checkPath = subOutputDir.resolve(qr + "_" + i + ".pdf");
-            if (Files.notExists(checkPath)) {
-                return checkPath;
-            }
+        Path logFile = createLogFilePath(outputDir);
+        CsvLogStreamWriter log = openLog(logFile);
+        AtomicInteger success = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        AtomicInteger noQR = new AtomicInteger();
+        AtomicInteger duplicates = new AtomicInteger();
+        // If the movers fall behind, the scan pipeline moves the next file itself, which slows down scanning.
+        ThreadPoolExecutor movers = new ThreadPoolExecutor(MOVER_COUNT, MOVER_COUNT, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MOVER_COUNT * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+        List<PdfScanResult> results;
+        try {
+            results = scanInputDir(inputDir, renamer, result -> movers.execute(() -> {
+                renameScanResult(renamer, result, success, failed, noQR, duplicates);
+                appendToLog(log, result);
+                publishResult(result);
+            }));
+            movers.shutdown();
+            movers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Logger.warn("Renaming was interrupted.");
+            return new ArrayList<>();
+        } finally {
+            movers.shutdownNow();
+            closeLog(log, logFile); // TODO put this outside of task
         }
-        // This should never happen. If it does, rename to current name.
-        return scanResult.getInputFilePath();
+
+        String summaryMessage = "Summary: tried renaming " + results.size() + " files, " + success + " successful, "
+                + failed + " unsuccessful, " + noQR + " not attempted (unable to find QR code), " + duplicates
+                + " not attempted (duplicate).";
+        Logger.info(summaryMessage);
+        updateMessage(summaryMessage);
+        return results;
     }
 
     /**
-     * Renames the PDFs based on the scan results.
+     * Renames a single PDF file based on its scan result.
      *
-     * @param scanResults the scan results
-     * @return updated scan results, including the old and new file path
-     * @throws IOException if unable to create or use output directory
+     * @param renamer    renamer
+     * @param scanResult the scan result
+     * @param success    counter of successfully renamed files
+     * @param failed     counter of files that could not be renamed
+     * @param noQR       counter of files without QR code
+     * @param duplicates counter of duplicates, which are left in place
      */
-    private List<PdfScanResult> renameScanResults(List<PdfScanResult> scanResults) throws IOException {
-        int fileCount = scanResults.size();
-        int success = 0;
-        int failed = 0;
-        int noQR = 0;
-        int current = 0;
-        Logger.info("Renaming starts now." + LSEP + "  Output directory: " + outputDir.getFileName());
-        updateProgress(current, fileCount);
-
-        // Create output directory.
-        if (!Files.exists(outputDir)) {
-            Files.createDirectory(outputDir);
-            Logger.error("Output directory did not exist and has been created.");
+    private void renameScanResult(PdfFileRenamer renamer, PdfScanResult scanResult, AtomicInteger success,
+                                  AtomicInteger failed, AtomicInteger noQR, AtomicInteger duplicates) {
+        if (scanResult.getQrCodeScanStatus() == PdfScanResult.ResultStatus.DUPLICATE) {
+            // Skip this file, its identical file is renamed.
+            duplicates.incrementAndGet();
+            return;
         }
-
-        // Iterate over every scanned file.
-        for (PdfScanResult scanResult : scanResults) {
-            current++;
-            updateProgress(current, fileCount);
-
-            if (!scanResult.isQRCodeFound()) {
-                // Skip this file.
-                noQR++;
-                continue;
-            }
-
-            // Find suitable renamed path and file name.
-            Path outputPath = findTargetPath(scanResult);
-            try {
-                Path resultPath = Files.move(scanResult.getInputFilePath(), outputPath);
-                scanResult.setOutputFilePath(resultPath);
-                success++;
-            } catch (IOException e) {
-                // Exception raised during move.
-                Logger.error(e, "!Unable to rename " + scanResult.getInputFilePath().getFileName() + ".");
-                failed++;
-            }
+        if (!scanResult.isQRCodeFound()) {
+            // Skip this file.
+            noQR.incrementAndGet();
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            renamer.rename(scanResult);
+            success.incrementAndGet();
+        } catch (IOException e) {
+            // Exception raised during move.
+            Logger.error(e, "!Unable to rename " + scanResult.getInputFilePath().getFileName() + ".");
+            failed.incrementAndGet();
+        } finally {
+            options.getMetrics().record(ScanMetrics.Stage.MOVE, start);
         }
-
-        String summaryMessage = "Summary: tried renaming " + fileCount + " files, " + success + " successful, " + failed
-                + " unsuccessful, " + noQR + " not attempted (unable to find QR code).";
-        Logger.info(summaryMessage);
-        updateMessage(summaryMessage);
-        return scanResults;
     }
 }
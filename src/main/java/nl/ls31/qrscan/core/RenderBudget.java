@@ -0,0 +1,91 @@
+package nl.ls31.qrscan.core;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * A global budget of pixels for images that are held in memory at the same time (page renders and decoded embedded
+ * images). Workers lease pixels before creating an image and return them after decoding, so concurrent renders of
+ * very large pages cannot exhaust the heap. Images larger than the whole budget are refused.
+ *
+ * @author Lars Steggink
+ */
+public class RenderBudget {
+    /**
+     * Estimated bytes of heap per pixel: an ARGB image, plus the luminance and bit matrices for decoding.
+     */
+    final static private int BYTES_PER_PIXEL = 6;
+    private final int totalPixels;
+    private final Semaphore available;
+
+    /**
+     * A global budget of pixels.
+     *
+     * @param totalPixels maximum number of pixels in memory at the same time
+     * @throws IllegalArgumentException if the budget is negative or zero
+     */
+    public RenderBudget(int totalPixels) {
+        if (totalPixels < 1) {
+            throw new IllegalArgumentException("Pixel budget is negative or zero.");
+        }
+        this.totalPixels = totalPixels;
+        this.available = new Semaphore(totalPixels, true);
+    }
+
+    /**
+     * Creates a budget that uses at most half of the maximum heap size for images.
+     *
+     * @return budget
+     */
+    public static RenderBudget forHeap() {
+        long pixels = Runtime.getRuntime().maxMemory() / 2 / BYTES_PER_PIXEL;
+        return new RenderBudget((int) Math.min(pixels, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Gets whether an image of the specified size could ever fit in this budget.
+     *
+     * @param pixels size of the image (px)
+     * @return whether it fits
+     */
+    public boolean fits(long pixels) {
+        return pixels <= totalPixels;
+    }
+
+    /**
+     * Leases pixels, waiting until enough pixels are available.
+     *
+     * @param pixels size of the image (px)
+     * @return lease, to be closed after the image is no longer needed
+     * @throws PageTooLargeException if the image is larger than the whole budget
+     * @throws InterruptedException  if interrupted while waiting
+     */
+    public Lease acquire(long pixels) throws PageTooLargeException, InterruptedException {
+        if (!fits(pixels)) {
+            throw new PageTooLargeException("Image of " + pixels + " pixels exceeds the budget of " + totalPixels
+                    + " pixels.");
+        }
+        int permits = (int) Math.max(pixels, 1);
+        available.acquire(permits);
+        return new Lease(permits);
+    }
+
+    /**
+     * Leased pixels. Closing the lease returns the pixels to the budget.
+     */
+    public class Lease implements AutoCloseable {
+        private final int permits;
+        private boolean closed;
+
+        private Lease(int permits) {
+            this.permits = permits;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                available.release(permits);
+            }
+        }
+    }
+}
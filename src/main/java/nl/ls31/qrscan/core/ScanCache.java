@@ -0,0 +1,230 @@
+package nl.ls31.qrscan.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * An on-disk cache of decoded QR codes, keyed by the contents of the PDF file.
+ *
+ * <p>
+ * Unlike the file attribute, the cache survives copying files to file systems or archives without custom file
+ * attributes, and it also recognises copies of a file that was scanned before. A lookup costs a hash of the file
+ * instead of a render.
+ * </p>
+ *
+ * <p>
+ * Every entry is a small properties file, named after the SHA-256 hash of the PDF file and of the scan settings that
+ * determine where the QR code is searched for (pages and region). Entries are written to a temporary file first and
+ * then moved into place, so concurrent workers or a crash never leave a half-written entry. This class is
+ * thread-safe.
+ * </p>
+ *
+ * @author Lars Steggink
+ */
+public class ScanCache {
+    final static private int BUFFER_SIZE = 64 * 1024;
+    final static private String ENTRY_SUFFIX = ".properties";
+    private final Path cacheDir;
+
+    /**
+     * An on-disk cache of decoded QR codes.
+     *
+     * @param cacheDir directory where the entries are stored; created if it does not exist
+     * @throws IOException if unable to create the directory
+     */
+    public ScanCache(Path cacheDir) throws IOException {
+        this.cacheDir = cacheDir;
+        Files.createDirectories(cacheDir);
+    }
+
+    /**
+     * Opens the cache in the default location, in the user's home directory.
+     *
+     * @return cache
+     * @throws IOException if unable to create the cache directory
+     */
+    public static ScanCache openDefault() throws IOException {
+        return new ScanCache(getDefaultDirectory());
+    }
+
+    /**
+     * Gets the default location of the cache.
+     *
+     * @return cache directory
+     */
+    public static Path getDefaultDirectory() {
+        return Paths.get(System.getProperty("user.home"), ".qrscan", "cache");
+    }
+
+    /**
+     * Calculates the SHA-256 hash of the contents of a file, reading it as a stream.
+     *
+     * @param file file to hash
+     * @return hash as lowercase hexadecimal string
+     * @throws IOException if unable to read the file
+     */
+    public static String hashFile(Path file) throws IOException {
+        MessageDigest digest = createDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Looks up the QR code of a file.
+     *
+     * @param contentHash hash of the file, see {@link #hashFile(Path)}
+     * @param options     scan options that were used to find the QR code
+     * @return cached entry, or null if not in the cache (or if the entry is unreadable)
+     */
+    public Entry get(String contentHash, ScanOptions options) {
+        Path entryPath = getEntryPath(contentHash, options);
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(entryPath, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+            String qrCode = properties.getProperty("qrcode");
+            int page = Integer.parseInt(properties.getProperty("page", "0"));
+            if (qrCode == null || !PdfScanner.isValidQRCode(qrCode)) {
+                return null;
+            }
+            return new Entry(qrCode, page);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | IllegalArgumentException e) {
+            // Damaged entry, it will be overwritten after scanning.
+            return null;
+        }
+    }
+
+    /**
+     * Stores the QR code of a file.
+     *
+     * @param contentHash hash of the file, see {@link #hashFile(Path)}
+     * @param options     scan options that were used to find the QR code
+     * @param qrCode      QR code
+     * @param page        page where the QR code was found (starting at 1)
+     * @throws IOException if unable to write the entry
+     */
+    public void put(String contentHash, ScanOptions options, String qrCode, int page) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("qrcode", qrCode);
+        properties.setProperty("page", String.valueOf(page));
+        properties.setProperty("pages", options.getPageSelection().toString());
+        properties.setProperty("region", options.getScanRegion().name());
+
+        Path entryPath = getEntryPath(contentHash, options);
+        Path tempPath = Files.createTempFile(cacheDir, contentHash, ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(tempPath, StandardCharsets.UTF_8)) {
+                properties.store(writer, null);
+            }
+            try {
+                Files.move(tempPath, entryPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempPath, entryPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    /**
+     * Gets the path of an entry.
+     *
+     * @param contentHash hash of the file
+     * @param options     scan options
+     * @return path of the entry
+     */
+    private Path getEntryPath(String contentHash, ScanOptions options) {
+        String settings = options.getPageSelection() + "|" + options.getScanRegion().name();
+        MessageDigest digest = createDigest();
+        digest.update(contentHash.getBytes(StandardCharsets.UTF_8));
+        digest.update(settings.getBytes(StandardCharsets.UTF_8));
+        return cacheDir.resolve(toHex(digest.digest()) + ENTRY_SUFFIX);
+    }
+
+    /**
+     * Creates a SHA-256 message digest.
+     *
+     * @return message digest
+     */
+    static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Converts bytes to a lowercase hexadecimal string.
+     *
+     * @param bytes bytes
+     * @return hexadecimal string
+     */
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Gets the location of the cache.
+     *
+     * @return cache directory
+     */
+    public Path getDirectory() {
+        return cacheDir;
+    }
+
+    /**
+     * A cached QR code.
+     */
+    public static class Entry {
+        private final String qrCode;
+        private final int page;
+
+        Entry(String qrCode, int page) {
+            this.qrCode = qrCode;
+            this.page = page;
+        }
+
+        /**
+         * Gets the QR code.
+         *
+         * @return QR code
+         */
+        public String getQrCode() {
+            return qrCode;
+        }
+
+        /**
+         * Gets the page where the QR code was found.
+         *
+         * @return page (starting at 1), or 0 if unknown
+         */
+        public int getPage() {
+            return page;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package nl.ls31.qrscan.core;
+
+import com.google.zxing.NotFoundException;
+import nl.ls31.qrscan.model.PdfScanResult;
+import org.tinylog.Logger;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Scans PDF files for QR codes, from several worker threads.
+ *
+ * <p>
+ * Every file is independent, so the callers (ScanPipeline and FolderWatcher) render and decode files in parallel on
+ * their own workers. This class is thread-safe.
+ * </p>
+ *
+ * @author Lars Steggink
+ */
+public class ScanEngine {
+
+    private final ScanOptions options;
+
+    /**
+     * Scans PDF files for QR codes, from several worker threads.
+     *
+     * @param options scan options, including the number of workers
+     */
+    public ScanEngine(ScanOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * Creates the pool for probing several pages per document, if needed. Pages are probed on a separate pool, so file
+     * workers never wait for each other.
+     *
+     * @return page probe pool, or null if not needed (single page, or a pool was already set)
+     */
+    ExecutorService openPageProbes() {
+        if (options.getPageSelection().isSinglePage() || options.getPageProbeExecutor() != null) {
+            return null;
+        }
+        ExecutorService pageProbes = Executors.newFixedThreadPool(options.getWorkerCount());
+        options.setPageProbeExecutor(pageProbes);
+        return pageProbes;
+    }
+
+    /**
+     * Shuts down a pool created by openPageProbes().
+     *
+     * @param pageProbes page probe pool, or null
+     */
+    void closePageProbes(ExecutorService pageProbes) {
+        if (pageProbes != null) {
+            pageProbes.shutdownNow();
+            options.setPageProbeExecutor(null);
+        }
+    }
+
+    /**
+     * Scans a single PDF file for a QR code. All problems are reported in the result status.
+     *
+     * @param pdf file to scan
+     * @return result
+     */
+    public PdfScanResult scanFile(PdfScanner pdf) {
+        return scanFile(pdf, false);
+    }
+
+    /**
+     * Tries to find the QR code of a single PDF file without scanning it, i.e. from the file attribute or the scan
+     * cache (if enabled).
+     *
+     * @param pdf file
+     * @return result, or null if the file needs to be scanned
+     */
+    public PdfScanResult resolveFile(PdfScanner pdf) {
+        try {
+            String qrCode = pdf.getKnownQRCode(options);
+            if (qrCode == null) {
+                return null;
+            }
+            Logger.info("Found QR code " + qrCode + " in " + pdf.getPath().getFileName() + " without scanning.");
+            return new PdfScanResult(pdf.getFileInfo(), PdfScanResult.ResultStatus.QR_CODE_FOUND, pdf.getFoundPage(),
+                    qrCode);
+        } catch (IOException e) {
+            // Unable to read the file, scanning reports the actual problem.
+            return null;
+        }
+    }
+
+    /**
+     * Scans a single PDF file for a QR code. All problems are reported in the result status.
+     *
+     * @param pdf      file to scan
+     * @param resolved whether resolveFile() was already tried, so the file attribute and cache can be skipped
+     * @return result
+     */
+    PdfScanResult scanFile(PdfScanner pdf, boolean resolved) {
+        Logger.info("Now scanning file " + pdf.getPath().getFileName() + ".");
+        try {
+            String qrCode = resolved ? pdf.scanDocument(options) : pdf.getQRCode(options);
+            int qrCodePage = pdf.getFoundPage();
+            Logger.info("Found QR code " + qrCode + " in " + pdf.getPath().getFileName() + ".");
+            if (!pdf.getDecodeDescription().isEmpty()) {
+                Logger.debug("Decoded " + pdf.getPath().getFileName() + " from " + pdf.getDecodeDescription() + ".");
+            }
+            return new PdfScanResult(pdf.getFileInfo(), PdfScanResult.ResultStatus.QR_CODE_FOUND, qrCodePage, qrCode);
+        } catch (PageTooLargeException e) {
+            Logger.warn("!Skipped " + pdf.getPath().getFileName() + ": " + e.getMessage());
+            return new PdfScanResult(pdf.getFileInfo(), PdfScanResult.ResultStatus.PAGE_TOO_LARGE, pdf.getFoundPage(),
+                    "");
+        } catch (IOException e) {
+            Logger.warn(e, "!Unable to access " + pdf.getPath().getFileName() + " or page not found.");
+            return new PdfScanResult(pdf.getFileInfo(), PdfScanResult.ResultStatus.NO_FILE_ACCESS, pdf.getFoundPage(),
+                    "");
+        } catch (NotFoundException e) {
+            Logger.warn(e, "!Unable to find QR code at specified page(s) in " + pdf.getPath().getFileName() + ".");
+            return new PdfScanResult(pdf.getFileInfo(), PdfScanResult.ResultStatus.NO_QR_CODE, pdf.getFoundPage(),
+                    "");
+        }
+    }
+}
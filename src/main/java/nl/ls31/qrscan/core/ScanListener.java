@@ -0,0 +1,40 @@
+package nl.ls31.qrscan.core;
+
+import java.time.Duration;
+
+/**
+ * Receives progress reports from a running ScanPipeline. Methods may be called from any worker thread.
+ *
+ * @author Lars Steggink
+ */
+public interface ScanListener {
+
+    /**
+     * Called after a file has been handled.
+     *
+     * @param processed number of files handled so far
+     * @param total     total number of files, or the number of files discovered so far if still discovering
+     */
+    void progress(long processed, long total);
+
+    /**
+     * Called while files are being discovered, e.g. during a directory walk, and once when done.
+     *
+     * @param discovered number of files discovered so far
+     * @param complete   whether all files have been discovered
+     */
+    default void discovered(long discovered, boolean complete) {
+    }
+
+    /**
+     * Called after a file has been resolved without scanning, or has been scanned. Files are first resolved from the
+     * file attribute or scan cache (fast); only the unresolved files are scanned (slow).
+     *
+     * @param resolved   number of files resolved without scanning so far
+     * @param scanned    number of unresolved files scanned so far
+     * @param unresolved number of files that need scanning so far
+     * @param remaining  estimated time to scan the remaining unresolved files, or null if not known yet
+     */
+    default void phaseProgress(long resolved, long scanned, long unresolved, Duration remaining) {
+    }
+}
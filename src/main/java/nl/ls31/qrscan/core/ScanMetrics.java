@@ -0,0 +1,246 @@
+package nl.ls31.qrscan.core;
+
+import nl.ls31.qrscan.model.PdfScanResult;
+import org.tinylog.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timers and counters for every stage of a scan: walking the directory, loading PDF files, rendering (per DPI),
+ * binarizing, decoding, reading and writing file attributes, moving files and writing the CSV log. Also counts the
+ * results by status and watches the queues of the scan pipeline.
+ *
+ * <p>
+ * Recording is cheap and thread-safe, so metrics are always recorded. While a task runs, the metrics are published as
+ * an MXBean (see register()), and a summary is logged at the end.
+ * </p>
+ *
+ * @author Lars Steggink
+ */
+public class ScanMetrics implements ScanMetricsMXBean {
+    final static private String OBJECT_NAME = "nl.ls31.qrscan:type=ScanMetrics";
+    final static private String LSEP = System.lineSeparator();
+    /**
+     * Metrics that are currently published over JMX, if any. Only the metrics of the latest scan are published.
+     */
+    private static ScanMetrics published;
+    private final long startTime = System.nanoTime();
+    private final Map<Stage, Timer> stages = new EnumMap<>(Stage.class);
+    private final ConcurrentMap<Integer, Timer> renderByDpi = new ConcurrentHashMap<>();
+    private final Map<PdfScanResult.ResultStatus, LongAdder> statuses = new EnumMap<>(PdfScanResult.ResultStatus.class);
+    private final ConcurrentMap<String, Collection<?>> queues = new ConcurrentHashMap<>();
+    private final LongAdder filesProcessed = new LongAdder();
+
+    public ScanMetrics() {
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new Timer());
+        }
+        for (PdfScanResult.ResultStatus status : PdfScanResult.ResultStatus.values()) {
+            statuses.put(status, new LongAdder());
+        }
+    }
+
+    /**
+     * Records a single run of a stage.
+     *
+     * @param stage     stage
+     * @param startTime System.nanoTime() at the start of the stage
+     */
+    public void record(Stage stage, long startTime) {
+        stages.get(stage).record(System.nanoTime() - startTime);
+    }
+
+    /**
+     * Records a single render, both for the render stage and for its DPI setting.
+     *
+     * @param dpi       DPI setting
+     * @param startTime System.nanoTime() at the start of the render
+     */
+    public void recordRender(int dpi, long startTime) {
+        long nanos = System.nanoTime() - startTime;
+        stages.get(Stage.RENDER).record(nanos);
+        renderByDpi.computeIfAbsent(dpi, key -> new Timer()).record(nanos);
+    }
+
+    /**
+     * Records the result of a single file.
+     *
+     * @param status result status
+     */
+    public void recordResult(PdfScanResult.ResultStatus status) {
+        statuses.get(status).increment();
+        filesProcessed.increment();
+    }
+
+    /**
+     * Watches the depth of a queue, until unwatchQueues() is called.
+     *
+     * @param name  name of the queue
+     * @param queue queue
+     */
+    public void watchQueue(String name, Collection<?> queue) {
+        queues.put(name, queue);
+    }
+
+    /**
+     * Stops watching all queues.
+     */
+    public void unwatchQueues() {
+        queues.clear();
+    }
+
+    /**
+     * Publishes these metrics over JMX, replacing the metrics of an earlier scan.
+     */
+    public void register() {
+        synchronized (ScanMetrics.class) {
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                ObjectName name = new ObjectName(OBJECT_NAME);
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+                server.registerMBean(this, name);
+                published = this;
+            } catch (JMException e) {
+                Logger.warn(e, "Unable to publish scan metrics over JMX.");
+            }
+        }
+    }
+
+    /**
+     * Stops publishing these metrics over JMX. Metrics of a later scan remain published.
+     */
+    public void unregister() {
+        synchronized (ScanMetrics.class) {
+            if (published != this) {
+                return;
+            }
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+            } catch (JMException e) {
+                Logger.warn(e, "Unable to stop publishing scan metrics over JMX.");
+            }
+            published = null;
+        }
+    }
+
+    @Override
+    public long getFilesProcessed() {
+        return filesProcessed.sum();
+    }
+
+    @Override
+    public double getFilesPerSecond() {
+        double seconds = getElapsedSeconds();
+        return seconds > 0 ? filesProcessed.sum() / seconds : 0;
+    }
+
+    @Override
+    public double getElapsedSeconds() {
+        return (System.nanoTime() - startTime) / 1e9;
+    }
+
+    @Override
+    public Map<String, Long> getStageCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        stages.forEach((stage, timer) -> counts.put(stage.name(), timer.count.sum()));
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getStageMillis() {
+        Map<String, Long> millis = new TreeMap<>();
+        stages.forEach((stage, timer) -> millis.put(stage.name(), timer.totalNanos.sum() / 1_000_000));
+        return millis;
+    }
+
+    @Override
+    public Map<String, Long> getStageMaxMillis() {
+        Map<String, Long> millis = new TreeMap<>();
+        stages.forEach((stage, timer) -> millis.put(stage.name(), timer.maxNanos.get() / 1_000_000));
+        return millis;
+    }
+
+    @Override
+    public Map<String, Long> getRenderMillisByDpi() {
+        Map<String, Long> millis = new TreeMap<>();
+        renderByDpi.forEach((dpi, timer) -> millis.put(dpi + " DPI", timer.totalNanos.sum() / 1_000_000));
+        return millis;
+    }
+
+    @Override
+    public Map<String, Long> getStatusCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        statuses.forEach((status, count) -> counts.put(status.name(), count.sum()));
+        return counts;
+    }
+
+    @Override
+    public Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> depths = new TreeMap<>();
+        queues.forEach((name, queue) -> depths.put(name, queue.size()));
+        return depths;
+    }
+
+    /**
+     * Summarizes the metrics, e.g. for the log at the end of a scan.
+     *
+     * @return multi-line summary
+     */
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder(String.format(Locale.ROOT,
+                "Scan metrics: %d files in %.1f s (%.1f files/s).", getFilesProcessed(), getElapsedSeconds(),
+                getFilesPerSecond()));
+        summary.append(LSEP).append(String.format(Locale.ROOT, "  %-16s %8s %10s %9s %9s", "Stage", "Count",
+                "Total ms", "Avg ms", "Max ms"));
+        stages.forEach((stage, timer) -> appendTimer(summary, stage.name(), timer));
+        new TreeMap<>(renderByDpi).forEach((dpi, timer) -> appendTimer(summary, "  " + dpi + " DPI", timer));
+        summary.append(LSEP).append("  Results: ").append(getStatusCounts());
+        return summary.toString();
+    }
+
+    private static void appendTimer(StringBuilder summary, String name, Timer timer) {
+        long count = timer.count.sum();
+        if (count == 0) {
+            return;
+        }
+        double totalMillis = timer.totalNanos.sum() / 1e6;
+        summary.append(LSEP).append(String.format(Locale.ROOT, "  %-16s %8d %10.0f %9.2f %9.1f", name, count,
+                totalMillis, totalMillis / count, timer.maxNanos.get() / 1e6));
+    }
+
+    /**
+     * Stages of a scan.
+     */
+    public enum Stage {
+        WALK, LOAD, EXTRACT_IMAGE, RENDER, BINARIZE, DECODE, ATTRIBUTE_READ, ATTRIBUTE_WRITE, MOVE, CSV_WRITE
+    }
+
+    /**
+     * Count, total time and maximum time of a stage.
+     */
+    private static class Timer {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package nl.ls31.qrscan.core;
+
+import java.util.Map;
+
+/**
+ * Runtime metrics of a scan, published over JMX while scanning (e.g. to view in JConsole or VisualVM).
+ *
+ * @author Lars Steggink
+ * @see ScanMetrics
+ */
+public interface ScanMetricsMXBean {
+
+    /**
+     * Gets the number of files handled so far.
+     *
+     * @return number of files
+     */
+    long getFilesProcessed();
+
+    /**
+     * Gets the number of files handled per second, since the start of the scan.
+     *
+     * @return files per second
+     */
+    double getFilesPerSecond();
+
+    /**
+     * Gets the time since the start of the scan.
+     *
+     * @return elapsed time (s)
+     */
+    double getElapsedSeconds();
+
+    /**
+     * Gets how often every stage ran, by stage name.
+     *
+     * @return counts
+     */
+    Map<String, Long> getStageCounts();
+
+    /**
+     * Gets the total time spent in every stage, by stage name. Stages run in parallel, so the total can exceed the
+     * elapsed time.
+     *
+     * @return total time (ms)
+     */
+    Map<String, Long> getStageMillis();
+
+    /**
+     * Gets the longest single run of every stage, by stage name.
+     *
+     * @return maximum time (ms)
+     */
+    Map<String, Long> getStageMaxMillis();
+
+    /**
+     * Gets the total time spent rendering, by DPI setting.
+     *
+     * @return total time (ms)
+     */
+    Map<String, Long> getRenderMillisByDpi();
+
+    /**
+     * Gets the number of results, by result status.
+     *
+     * @return counts
+     */
+    Map<String, Long> getStatusCounts();
+
+    /**
+     * Gets the number of items waiting in each queue of the scan pipeline.
+     *
+     * @return queue depths
+     */
+    Map<String, Integer> getQueueDepths();
+}
@@ -0,0 +1,301 @@
+package nl.ls31.qrscan.core;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Options for a single scan run, i.e. how every PDF file of a batch should be scanned for QR codes.
+ *
+ * <p>
+ * Unlike AppSettings, these options are not stored and have no JavaFX dependencies.
+ * </p>
+ *
+ * @author Lars Steggink
+ */
+public class ScanOptions {
+    /**
+     * Main memory (bytes) PDFBox may use per document when memory is limited; the rest goes into a scratch file.
+     */
+    final static public long LIMITED_MAIN_MEMORY = 64L * 1024 * 1024;
+
+    private PageSelection pageSelection = PageSelection.single(1);
+    private boolean useFileAttributes = true;
+    private boolean writeFileAttributes = true;
+    private int workerCount = defaultWorkerCount();
+    private ScanRegion scanRegion = ScanRegion.FULL_PAGE;
+    private DpiLadder dpiLadder = new DpiLadder(DpiLadder.DEFAULT_DPIS);
+    private DecodeChain decodeChain = DecodeChain.parse(DecodeChain.DEFAULT_CHAIN);
+    private ExecutorService pageProbeExecutor;
+    private boolean memoryLimited = false;
+    private RenderBudget renderBudget;
+    private ScanCache scanCache;
+    private boolean skipDuplicates = false;
+    private ScanMetrics metrics = new ScanMetrics();
+
+    /**
+     * Gets the default number of workers, i.e. the number of available processors.
+     *
+     * @return default number of workers
+     */
+    public static int defaultWorkerCount() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Gets the pages where QR codes are expected, in order of preference.
+     *
+     * @return page selection
+     */
+    public PageSelection getPageSelection() {
+        return pageSelection;
+    }
+
+    /**
+     * Sets the pages where QR codes are expected, in order of preference.
+     *
+     * @param pageSelection page selection
+     */
+    public void setPageSelection(PageSelection pageSelection) {
+        this.pageSelection = pageSelection;
+    }
+
+    /**
+     * Sets a single page where QR codes are expected.
+     *
+     * @param qrCodePage page number (starting at 1)
+     * @throws IllegalArgumentException if the page number is negative or zero
+     */
+    public void setQrCodePage(int qrCodePage) {
+        this.pageSelection = PageSelection.single(qrCodePage);
+    }
+
+    /**
+     * Gets whether to use the custom file attribute to get stored QR codes instead of (slow) scanning.
+     *
+     * @return whether to use the custom file attribute
+     */
+    public boolean getUseFileAttributes() {
+        return useFileAttributes;
+    }
+
+    /**
+     * Sets whether to use the custom file attribute to get stored QR codes instead of (slow) scanning.
+     *
+     * @param useFileAttributes whether to use the custom file attribute
+     */
+    public void setUseFileAttributes(boolean useFileAttributes) {
+        this.useFileAttributes = useFileAttributes;
+    }
+
+    /**
+     * Gets whether to write a custom file attribute after a QR code has been recognised.
+     *
+     * @return whether to write the custom file attribute
+     */
+    public boolean getWriteFileAttributes() {
+        return writeFileAttributes;
+    }
+
+    /**
+     * Sets whether to write a custom file attribute after a QR code has been recognised.
+     *
+     * @param writeFileAttributes whether to write the custom file attribute
+     */
+    public void setWriteFileAttributes(boolean writeFileAttributes) {
+        this.writeFileAttributes = writeFileAttributes;
+    }
+
+    /**
+     * Gets the number of files that are scanned in parallel.
+     *
+     * @return number of workers
+     */
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    /**
+     * Sets the number of files that are scanned in parallel.
+     *
+     * @param workerCount number of workers
+     * @throws IllegalArgumentException if the number of workers is negative or zero
+     */
+    public void setWorkerCount(int workerCount) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("Number of workers is negative or zero.");
+        }
+        this.workerCount = workerCount;
+    }
+
+    /**
+     * Gets the region of the page where QR codes are expected.
+     *
+     * @return scan region
+     */
+    public ScanRegion getScanRegion() {
+        return scanRegion;
+    }
+
+    /**
+     * Sets the region of the page where QR codes are expected. If no QR code is found in this region, the full page
+     * is scanned as well.
+     *
+     * @param scanRegion scan region
+     */
+    public void setScanRegion(ScanRegion scanRegion) {
+        this.scanRegion = scanRegion;
+    }
+
+    /**
+     * Gets the DPI settings to try when rendering pages. The ladder is shared by all files of a run, so it learns
+     * which settings succeed.
+     *
+     * @return DPI ladder
+     */
+    public DpiLadder getDpiLadder() {
+        return dpiLadder;
+    }
+
+    /**
+     * Sets the DPI settings to try when rendering pages, e.g. a ladder in the order learned during a previous run.
+     *
+     * @param dpiLadder DPI ladder
+     */
+    public void setDpiLadder(DpiLadder dpiLadder) {
+        this.dpiLadder = dpiLadder;
+    }
+
+    /**
+     * Gets the decode steps that are tried on every image, cheap steps first.
+     *
+     * @return decode chain
+     */
+    public DecodeChain getDecodeChain() {
+        return decodeChain;
+    }
+
+    /**
+     * Sets the decode steps that are tried on every image, cheap steps first.
+     *
+     * @param decodeChain decode chain
+     */
+    public void setDecodeChain(DecodeChain decodeChain) {
+        this.decodeChain = decodeChain;
+    }
+
+    /**
+     * Gets the executor used to probe several pages of one document in parallel.
+     *
+     * @return executor, or null if pages are probed one after another
+     */
+    public ExecutorService getPageProbeExecutor() {
+        return pageProbeExecutor;
+    }
+
+    /**
+     * Sets the executor used to probe several pages of one document in parallel. The caller remains responsible for
+     * shutting it down.
+     *
+     * @param pageProbeExecutor executor, or null to probe pages one after another
+     */
+    public void setPageProbeExecutor(ExecutorService pageProbeExecutor) {
+        this.pageProbeExecutor = pageProbeExecutor;
+    }
+
+    /**
+     * Gets whether memory use is limited, for very large PDF files.
+     *
+     * @return whether memory use is limited
+     */
+    public boolean getMemoryLimited() {
+        return memoryLimited;
+    }
+
+    /**
+     * Sets whether memory use is limited, for very large PDF files. If so, documents are buffered in a scratch file
+     * instead of main memory, and page renders share a pixel budget based on the maximum heap size. Pages that are too
+     * large for the budget are skipped.
+     *
+     * @param memoryLimited whether to limit memory use
+     */
+    public void setMemoryLimited(boolean memoryLimited) {
+        this.memoryLimited = memoryLimited;
+        this.renderBudget = memoryLimited ? RenderBudget.forHeap() : null;
+    }
+
+    /**
+     * Gets the pixel budget shared by all page renders.
+     *
+     * @return pixel budget, or null if unlimited
+     */
+    public RenderBudget getRenderBudget() {
+        return renderBudget;
+    }
+
+    /**
+     * Creates the PDFBox memory usage setting for loading a single document.
+     *
+     * @return memory usage setting
+     */
+    public MemoryUsageSetting createMemoryUsageSetting() {
+        return memoryLimited
+                ? MemoryUsageSetting.setupMixed(LIMITED_MAIN_MEMORY)
+                : MemoryUsageSetting.setupMainMemoryOnly();
+    }
+
+    /**
+     * Gets the cache of decoded QR codes.
+     *
+     * @return scan cache, or null if not used
+     */
+    public ScanCache getScanCache() {
+        return scanCache;
+    }
+
+    /**
+     * Sets the cache of decoded QR codes, which is consulted before scanning and updated after scanning.
+     *
+     * @param scanCache scan cache, or null to not use a cache
+     */
+    public void setScanCache(ScanCache scanCache) {
+        this.scanCache = scanCache;
+    }
+
+    /**
+     * Gets whether files with identical contents are scanned only once.
+     *
+     * @return whether to skip duplicates
+     */
+    public boolean getSkipDuplicates() {
+        return skipDuplicates;
+    }
+
+    /**
+     * Sets whether files with identical contents are scanned only once. The other files are reported as duplicates
+     * and are not moved or renamed.
+     *
+     * @param skipDuplicates whether to skip duplicates
+     */
+    public void setSkipDuplicates(boolean skipDuplicates) {
+        this.skipDuplicates = skipDuplicates;
+    }
+
+    /**
+     * Gets the metrics in which the stages of a scan are recorded.
+     *
+     * @return metrics
+     */
+    public ScanMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics in which the stages of a scan are recorded, e.g. new metrics for every scan run.
+     *
+     * @param metrics metrics
+     */
+    public void setMetrics(ScanMetrics metrics) {
+        this.metrics = metrics;
+    }
+}
@@ -1,25 +1,24 @@
 package nl.ls31.qrscan.core;
 
-import com.google.zxing.NotFoundException;
 import javafx.concurrent.Task;
 import nl.ls31.qrscan.model.PdfScanResult;
 import org.tinylog.Logger;
 
 import java.awt.*;
 import java.io.IOException;
-import java.nio.file.FileVisitResult;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
 
 /**
  * In this Task, PDF files in the input directory are scanned recursively (at a specified page), results are aggregated
- * and finally reported as an CSV file within the input directory.
+ * and finally reported as an CSV file within the input directory. Scanning starts while the directory is still being
+ * walked.
  * <p>
  * The user should predefine the page where the QR code can be found, as this will make scanning for QR codes
  * tremendously more efficient.
@@ -29,129 +28,222 @@ import java.util.List;
 public class ScanPdfsTask extends Task<List<PdfScanResult>> {
     final static private String LSEP = System.lineSeparator();
     protected final Path inputDir;
-    private final int qrCodePage;
-    private final boolean writeFileAttributes;
-    private final boolean useFileAttributes;
+    protected final ScanOptions options;
     private final boolean openLogFile;
+    private volatile Consumer<PdfScanResult> resultListener = result -> {
+    };
 
     /**
-     * @param inputDir            Input directory with PDF files.
-     * @param qrCodePage          Page where QR codes are expected.
-     * @param writeFileAttributes whether to write a custom file attribute after a QR code has been recognised
-     * @param useFileAttributes   whether to use the custom file attribute to get stored QR codes instead of (slow)
-     *                            scanning
-     * @param openLogFile         whether to open the CSV log file at the end.
+     * @param inputDir    Input directory with PDF files.
+     * @param options     Scan options (e.g. page where QR codes are expected, number of workers).
+     * @param openLogFile whether to open the CSV log file at the end.
      */
-    public ScanPdfsTask(Path inputDir, int qrCodePage, boolean useFileAttributes, boolean writeFileAttributes, boolean openLogFile) {
+    public ScanPdfsTask(Path inputDir, ScanOptions options, boolean openLogFile) {
         this.inputDir = inputDir;
-        this.qrCodePage = qrCodePage;
-        this.useFileAttributes = useFileAttributes;
-        this.writeFileAttributes = writeFileAttributes;
+        this.options = options;
         this.openLogFile = openLogFile;
     }
 
     /**
-     * Iterates over every PDF file and tries to find the QR code.
+     * Iterates over every PDF file and tries to find the QR code. Every result is logged as soon as it is known.
      */
     @Override
     protected List<PdfScanResult> call() {
-        List<PdfScanner> pdfs = findInputFiles(inputDir);
-        List<PdfScanResult> results = scanInputFiles(pdfs);
-        logResults(results, inputDir);
-        return results;
+        startMetrics();
+        Path logFile = createLogFilePath(inputDir);
+        CsvLogStreamWriter log = openLog(logFile);
+        try {
+            return scanInputDir(inputDir, null, result -> {
+                appendToLog(log, result);
+                publishResult(result);
+            });
+        } finally {
+            closeLog(log, logFile);
+            finishMetrics();
+        }
+    }
+
+    /**
+     * Sets the listener that receives every result as soon as it is final, e.g. to show results while the task is
+     * running. The listener is called from background threads, and should return quickly.
+     *
+     * @param resultListener result listener
+     */
+    public void setResultListener(Consumer<PdfScanResult> resultListener) {
+        this.resultListener = resultListener;
+    }
+
+    /**
+     * Passes a final result (i.e. logged, and renamed if renaming) to the result listener.
+     *
+     * @param result result
+     */
+    protected void publishResult(PdfScanResult result) {
+        resultListener.accept(result);
+    }
+
+    /**
+     * Starts new metrics for this run and publishes them over JMX while the task runs.
+     */
+    protected void startMetrics() {
+        ScanMetrics metrics = new ScanMetrics();
+        options.setMetrics(metrics);
+        metrics.register();
+    }
+
+    /**
+     * Logs a summary of the metrics of this run and stops publishing them.
+     */
+    protected void finishMetrics() {
+        ScanMetrics metrics = options.getMetrics();
+        metrics.unregister();
+        Logger.info(metrics.getSummary());
     }
 
     /**
-     * Logs the results by logging to a CSV file.
-     * <p>
-     * TODO Move logging outside of task
+     * Creates a time stamped path for the CSV log file.
      *
-     * @param results Results from scanning.
-     * @param dir     Directory to save CSV file into.
+     * @param dir Directory to save CSV file into.
+     * @return path of the log file
      */
-    protected void logResults(List<PdfScanResult> results, Path dir) {
-        // Create a time stamp for the log file name, then log in that file.
+    protected Path createLogFilePath(Path dir) {
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH-mm-ss");
         String timestamp = sdf.format(Calendar.getInstance().getTime());
-        Path logFile = dir.resolve("ScanResults_QRScan_" + timestamp + ".csv");
+        return dir.resolve("ScanResults_QRScan_" + timestamp + ".csv");
+    }
+
+    /**
+     * Creates a CSV log file, to which results can be appended while they come in.
+     *
+     * @param logFile path of the log file
+     * @return log writer, or null if unable to create the log file
+     */
+    protected CsvLogStreamWriter openLog(Path logFile) {
         try {
-            CsvLogWriter.writeLogFile(results, logFile);
-            Logger.info("Results were logged to CSV file: " + logFile.getFileName() + ".");
-            if (openLogFile) {
-                Desktop.getDesktop().open(logFile.toFile());
-            }
+            return new CsvLogStreamWriter(logFile);
         } catch (IOException e) {
             Logger.error(e, "Unable to log results in CSV file.");
+            return null;
         }
     }
 
     /**
-     * Lists all PDF files in a specific directory.
+     * Appends a result to the CSV log file.
      *
-     * @param inputDir Path to directory.
-     * @return List of PDF files (no guarantees regarding available QR codes).
+     * @param log    log writer, or null if there is no log file
+     * @param result result of scanning (and renaming)
      */
-    protected List<PdfScanner> findInputFiles(Path inputDir) {
-        List<PdfScanner> allFiles = new ArrayList<>();
-
-        SimpleFileVisitor<Path> pdfFileVisitor = new SimpleFileVisitor<>() {
-            @Override
-            public FileVisitResult visitFile(Path filePath, BasicFileAttributes attrs) {
-                // Convert path to file
-                if (filePath.toString().toLowerCase().endsWith(".pdf")) {
-                    allFiles.add(new PdfScanner(filePath));
-                }
-                return FileVisitResult.CONTINUE;
-            }
-        };
+    protected void appendToLog(CsvLogStreamWriter log, PdfScanResult result) {
+        if (log == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            log.write(result);
+        } catch (IOException e) {
+            Logger.error(e, "Unable to log result of " + result.getInputFilePath().getFileName() + " in CSV file.");
+        } finally {
+            options.getMetrics().record(ScanMetrics.Stage.CSV_WRITE, start);
+        }
+    }
 
+    /**
+     * Closes the CSV log file and opens it, if requested.
+     *
+     * @param log     log writer, or null if there is no log file
+     * @param logFile path of the log file
+     */
+    protected void closeLog(CsvLogStreamWriter log, Path logFile) {
+        if (log == null) {
+            return;
+        }
         try {
-            Files.walkFileTree(inputDir, pdfFileVisitor);
+            log.close();
+            Logger.info("Results were logged to CSV file: " + logFile.getFileName() + ".");
+            if (openLogFile) {
+                Desktop.getDesktop().open(logFile.toFile());
+            }
         } catch (IOException e) {
-            Logger.error(e, "!Unable to read PDF file.");
+            Logger.error(e, "Unable to log results in CSV file.");
         }
-        return allFiles;
     }
 
     /**
-     * Scans list of input files for QR codes.
+     * Scans all PDF files in the input directory (recursively) for QR codes. Scanning starts while the directory is
+     * still being walked.
      *
-     * @param inputFiles List of files to scan for QR codes.
-     * @return Results from scanning the input files.
+     * @param inputDir directory with PDF files
+     * @return results from scanning the input files, in discovery order
      */
-    protected List<PdfScanResult> scanInputFiles(List<PdfScanner> inputFiles) {
-        int fileCount = inputFiles.size();
-        int success = 0;
-        int failed = 0;
-        int current = 0;
+    protected List<PdfScanResult> scanInputDir(Path inputDir) {
+        return scanInputDir(inputDir, null, this::publishResult);
+    }
+
+    /**
+     * Scans all PDF files in the input directory (recursively) for QR codes. Scanning starts while the directory is
+     * still being walked.
+     *
+     * @param inputDir directory with PDF files
+     * @param renamer  renamer that moves files while scanning, or null; its output directory is skipped
+     * @param handler  handler that receives every result as soon as it is known, in completion order
+     * @return results from scanning the input files, in discovery order
+     */
+    protected List<PdfScanResult> scanInputDir(Path inputDir, PdfFileRenamer renamer,
+                                               Consumer<PdfScanResult> handler) {
         Logger.info("New scan initiated." + LSEP + "  Input directory: " + inputDir.getFileName() + LSEP
-                + "  Scanning page:   " + qrCodePage + LSEP + "  Number of files: " + fileCount);
+                + "  Scanning pages:  " + options.getPageSelection() + LSEP + "  Workers:         "
+                + options.getWorkerCount());
 
-        // Start the loop through all files.
         List<PdfScanResult> results = new ArrayList<>();
-        for (PdfScanner pdf : inputFiles) {
-            updateProgress(++current, fileCount);
-            Logger.info("Now scanning file " + pdf.getPath().getFileName() + ".");
-
-            try {
-                String qrCode = pdf.getQRCode(qrCodePage, useFileAttributes, writeFileAttributes);
-                Logger.info("Found QR code " + qrCode + " in " + pdf.getPath().getFileName() + ".");
-                results.add(new PdfScanResult(pdf, PdfScanResult.ResultStatus.QR_CODE_FOUND, qrCodePage, qrCode));
-                success++;
-            } catch (IOException e) {
-                Logger.warn(e, "!Unable to access " + pdf.getPath().getFileName() + " or page not found.");
-                results.add(new PdfScanResult(pdf, PdfScanResult.ResultStatus.NO_FILE_ACCESS, qrCodePage, ""));
-                failed++;
-            } catch (NotFoundException e) {
-                Logger.warn(e, "!Unable to find QR code at specified page in " + pdf.getPath().getFileName() + ".");
-                results.add(new PdfScanResult(pdf, PdfScanResult.ResultStatus.NO_QR_CODE, qrCodePage, ""));
-                failed++;
+        ScanPipeline pipeline = new ScanPipeline(options, new ScanListener() {
+            private volatile boolean discovering = true;
+
+            @Override
+            public void progress(long processed, long total) {
+                updateProgress(processed, total);
+            }
+
+            @Override
+            public void phaseProgress(long resolved, long scanned, long unresolved, Duration remaining) {
+                String message = "Resolved " + resolved + " files without scanning; scanned " + scanned + " of "
+                        + unresolved + (discovering ? " remaining files found so far" : " remaining files");
+                if (remaining != null && !discovering) {
+                    message += " (about " + (remaining.toMinutes() + 1) + " min left)";
+                }
+                updateMessage(message + "...");
+            }
+
+            @Override
+            public void discovered(long discovered, boolean complete) {
+                discovering = !complete;
             }
+        });
+        pipeline.setRenamer(renamer);
+        long fileCount;
+        try {
+            fileCount = pipeline.run(inputDir, (sequence, result) -> {
+                // Results arrive in completion order; keep the list in discovery order.
+                while (results.size() <= sequence) {
+                    results.add(null);
+                }
+                results.set((int) sequence, result);
+                handler.accept(result);
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Logger.warn("Scan was interrupted.");
+            results.removeIf(Objects::isNull);
+            return results;
         }
 
-        String summaryMessage = "Summary: scanned " + fileCount + " files: " + success + " successful, " + failed + " unsuccessful.";
+        long success = results.stream().filter(PdfScanResult::isQRCodeFound).count();
+        long duplicateCount = pipeline.getDuplicateCount();
+        long failed = fileCount - success - duplicateCount;
+        String summaryMessage = "Summary: scanned " + fileCount + " files: " + success + " successful, " + failed + " unsuccessful, " + duplicateCount + " duplicates.";
         Logger.info(summaryMessage);
+        Logger.info("Learned DPI order: " + options.getDpiLadder() + ".");
+        Logger.info("Successful decode steps: " + options.getDecodeChain().getStatistics() + ".");
         updateMessage(summaryMessage);
         return results;
     }
-}
\ No newline at end of file
+}
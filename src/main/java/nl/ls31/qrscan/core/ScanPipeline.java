@@ -0,0 +1,398 @@
+package nl.ls31.qrscan.core;
+
+import nl.ls31.qrscan.model.PdfFileInfo;
+import nl.ls31.qrscan.model.PdfScanResult;
+import org.tinylog.Logger;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Scans all PDF files in a directory (recursively) for QR codes, while the directory is still being walked.
+ *
+ * <p>
+ * Discovery, triage, scanning and result handling are connected by bounded queues: a walker thread feeds the PDF files
+ * it finds to the triage threads, which resolve every file they can from the file attribute or the scan cache (fast).
+ * Only the unresolved files are passed on to the scan workers (slow). All results flow back to the calling thread.
+ * Scanning starts as soon as the first PDF file is found, and neither the list of files nor the results need to be
+ * kept in memory by the pipeline.
+ * </p>
+ *
+ * <p>
+ * Results are handed over as soon as they are known, together with their position in discovery order, so resolved
+ * files are reported immediately instead of waiting for slow scans of earlier files. Progress reports the number of
+ * files processed versus the number of files discovered so far, and an estimate of the time needed to scan the
+ * remaining unresolved files. If duplicates are skipped, identical files are recognised on the fly.
+ * </p>
+ *
+ * @author Lars Steggink
+ */
+public class ScanPipeline {
+    /**
+     * Number of queued items per worker, in each queue.
+     */
+    final static private int QUEUE_SIZE_PER_WORKER = 4;
+    /**
+     * Number of triage threads. Reading file attributes is mostly waiting for the file system.
+     */
+    final static private int TRIAGE_COUNT = 8;
+    private final ScanOptions options;
+    private final ScanListener listener;
+    private final ScanEngine engine;
+    private final DuplicateIndex duplicates;
+    private final AtomicLong discovered = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong resolved = new AtomicLong();
+    private final AtomicLong unresolved = new AtomicLong();
+    private final AtomicLong scanned = new AtomicLong();
+    private final AtomicLong scanStart = new AtomicLong();
+    private PdfFileRenamer renamer;
+
+    /**
+     * Scans all PDF files in a directory (recursively) for QR codes, while the directory is still being walked.
+     *
+     * @param options  scan options, including the number of workers
+     * @param listener listener for progress reports
+     */
+    public ScanPipeline(ScanOptions options, ScanListener listener) {
+        this.options = options;
+        this.listener = listener;
+        this.engine = new ScanEngine(options);
+        this.duplicates = options.getSkipDuplicates() ? new DuplicateIndex() : null;
+    }
+
+    /**
+     * Sets the renamer that moves files while the directory is still being walked. Its output directory and the files
+     * it renamed are skipped, so renamed files are not scanned and renamed again. Call this before running.
+     *
+     * @param renamer renamer, or null if files are not renamed
+     */
+    public void setRenamer(PdfFileRenamer renamer) {
+        this.renamer = renamer;
+    }
+
+    /**
+     * Scans all PDF files in a directory. Results are handed to the handler on the calling thread, as soon as they are
+     * known. A pipeline can run only once.
+     *
+     * @param inputDir directory with PDF files
+     * @param handler  handler for results
+     * @return number of files that were resolved, scanned or recognised as duplicates
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public long run(Path inputDir, ScanResultHandler handler) throws InterruptedException {
+        int workerCount = options.getWorkerCount();
+        boolean triage = options.getUseFileAttributes() || options.getScanCache() != null;
+        int queueSize = workerCount * QUEUE_SIZE_PER_WORKER;
+        BlockingQueue<Discovered> triageQueue = new ArrayBlockingQueue<>(Math.max(queueSize, TRIAGE_COUNT * 4));
+        BlockingQueue<Discovered> scanQueue = new ArrayBlockingQueue<>(queueSize);
+        BlockingQueue<Scanned> resultQueue = new ArrayBlockingQueue<>(Math.max(queueSize, TRIAGE_COUNT * 4));
+
+        ExecutorService walker = Executors.newSingleThreadExecutor();
+        ExecutorService triageThreads = Executors.newFixedThreadPool(TRIAGE_COUNT);
+        ExecutorService workers = Executors.newFixedThreadPool(workerCount);
+        ExecutorService pageProbes = engine.openPageProbes();
+        ScanMetrics metrics = options.getMetrics();
+        metrics.watchQueue("triage", triageQueue);
+        metrics.watchQueue("scan", scanQueue);
+        metrics.watchQueue("result", resultQueue);
+        try {
+            if (triage) {
+                walker.execute(() -> walk(inputDir, triageQueue, TRIAGE_COUNT, resultQueue, true));
+                AtomicInteger activeTriage = new AtomicInteger(TRIAGE_COUNT);
+                for (int i = 0; i < TRIAGE_COUNT; i++) {
+                    triageThreads.execute(() -> triage(triageQueue, scanQueue, resultQueue, activeTriage,
+                            workerCount));
+                }
+            } else {
+                walker.execute(() -> walk(inputDir, scanQueue, workerCount, resultQueue, false));
+            }
+            for (int i = 0; i < workerCount; i++) {
+                workers.execute(() -> work(scanQueue, resultQueue, triage));
+            }
+
+            // Hand over the results as soon as they are known.
+            long handled = 0;
+            long total = -1;
+            while (total < 0 || handled < total) {
+                Scanned next = resultQueue.take();
+                if (next.failure != null) {
+                    // scanFile() handles all checked exceptions, so this is a programming error.
+                    throw new IllegalStateException(next.failure);
+                }
+                if (next.sequence < 0) {
+                    total = next.total;
+                } else {
+                    metrics.recordResult(next.result.getQrCodeScanStatus());
+                    handler.handle(next.sequence, next.result);
+                    handled++;
+                }
+            }
+            return total;
+        } finally {
+            walker.shutdownNow();
+            triageThreads.shutdownNow();
+            workers.shutdownNow();
+            engine.closePageProbes(pageProbes);
+            metrics.unwatchQueues();
+        }
+    }
+
+    /**
+     * Walks the directory and queues every PDF file for the next stage. Finally, every thread of the next stage gets a
+     * stop signal and the total number of files is reported to the calling thread.
+     *
+     * @param inputDir    directory with PDF files
+     * @param nextQueue   queue to the next stage
+     * @param nextCount   number of threads in the next stage
+     * @param resultQueue queue to the calling thread
+     * @param triage      whether the next stage is triage
+     */
+    private void walk(Path inputDir, BlockingQueue<Discovered> nextQueue, int nextCount,
+                      BlockingQueue<Scanned> resultQueue, boolean triage) {
+        // Time spent waiting for the next stage is not part of the walk itself.
+        long walkStart = System.nanoTime();
+        AtomicLong waiting = new AtomicLong();
+        SimpleFileVisitor<Path> pdfFileVisitor = new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (renamer != null && renamer.isOutputSubtree(dir, inputDir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path filePath, BasicFileAttributes attrs) {
+                if (filePath.toString().toLowerCase().endsWith(".pdf")
+                        && (renamer == null || !renamer.isRenamedFile(filePath))) {
+                    long sequence = discovered.getAndIncrement();
+                    if (!triage) {
+                        unresolved.incrementAndGet();
+                    }
+                    listener.discovered(sequence + 1, false);
+                    long putStart = System.nanoTime();
+                    try {
+                        nextQueue.put(new Discovered(sequence, new PdfScanner(filePath, attrs), attrs.size()));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return FileVisitResult.TERMINATE;
+                    } finally {
+                        waiting.addAndGet(System.nanoTime() - putStart);
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path filePath, IOException e) {
+                Logger.warn(e, "!Unable to read " + filePath.getFileName() + ".");
+                return FileVisitResult.CONTINUE;
+            }
+        };
+
+        try {
+            Files.walkFileTree(inputDir, pdfFileVisitor);
+        } catch (IOException e) {
+            Logger.error(e, "!Unable to read PDF file.");
+        }
+        options.getMetrics().record(ScanMetrics.Stage.WALK, walkStart + waiting.get());
+        try {
+            for (int i = 0; i < nextCount; i++) {
+                nextQueue.put(Discovered.STOP);
+            }
+            listener.discovered(discovered.get(), true);
+            resultQueue.put(new Scanned(-1, null, discovered.get(), null));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Resolves queued files from the file attribute or scan cache, until a stop signal is received. Unresolved files
+     * are passed on to the scan workers. The last triage thread to stop passes the stop signal on to the workers.
+     *
+     * @param triageQueue  queue from the walker
+     * @param scanQueue    queue to the scan workers
+     * @param resultQueue  queue to the calling thread
+     * @param activeTriage number of triage threads that did not stop yet
+     * @param workerCount  number of scan workers
+     */
+    private void triage(BlockingQueue<Discovered> triageQueue, BlockingQueue<Discovered> scanQueue,
+                        BlockingQueue<Scanned> resultQueue, AtomicInteger activeTriage, int workerCount) {
+        try {
+            while (true) {
+                Discovered next = triageQueue.take();
+                if (next == Discovered.STOP) {
+                    if (activeTriage.decrementAndGet() == 0) {
+                        for (int i = 0; i < workerCount; i++) {
+                            scanQueue.put(Discovered.STOP);
+                        }
+                    }
+                    return;
+                }
+                PdfScanResult result;
+                try {
+                    result = engine.resolveFile(next.pdf);
+                } catch (RuntimeException e) {
+                    resultQueue.put(new Scanned(next.sequence, null, 0, e));
+                    continue;
+                }
+                if (result == null) {
+                    unresolved.incrementAndGet();
+                    reportProgress();
+                    scanQueue.put(next);
+                } else {
+                    resolved.incrementAndGet();
+                    processed.incrementAndGet();
+                    reportProgress();
+                    resultQueue.put(new Scanned(next.sequence, result, 0, null));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Scans queued files until a stop signal is received.
+     *
+     * @param scanQueue   queue from the walker or triage
+     * @param resultQueue queue to the calling thread
+     * @param triaged     whether the files were triaged already
+     */
+    private void work(BlockingQueue<Discovered> scanQueue, BlockingQueue<Scanned> resultQueue, boolean triaged) {
+        try {
+            while (true) {
+                Discovered next = scanQueue.take();
+                if (next == Discovered.STOP) {
+                    return;
+                }
+                scanStart.compareAndSet(0, System.nanoTime());
+                Scanned result;
+                try {
+                    result = new Scanned(next.sequence, process(next, triaged), 0, null);
+                } catch (RuntimeException | ExecutionException e) {
+                    result = new Scanned(next.sequence, null, 0, e);
+                }
+                scanned.incrementAndGet();
+                processed.incrementAndGet();
+                reportProgress();
+                resultQueue.put(result);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reports the progress to the listener, including an estimate of the time needed to scan the remaining unresolved
+     * files, based on the scan rate so far.
+     */
+    private void reportProgress() {
+        listener.progress(processed.get(), discovered.get());
+        long scannedCount = scanned.get();
+        long unresolvedCount = unresolved.get();
+        Duration remaining = null;
+        if (scannedCount > 0) {
+            long elapsed = System.nanoTime() - scanStart.get();
+            remaining = Duration.ofNanos(elapsed / scannedCount * Math.max(unresolvedCount - scannedCount, 0));
+        }
+        listener.phaseProgress(resolved.get(), scannedCount, unresolvedCount, remaining);
+    }
+
+    /**
+     * Scans a single file, unless it is identical to a file that was scanned before.
+     *
+     * @param discovered discovered file
+     * @param triaged    whether the file was triaged already
+     * @return result
+     * @throws InterruptedException if interrupted while waiting for the result of an identical file
+     * @throws ExecutionException   if scanning the identical file failed unexpectedly
+     */
+    private PdfScanResult process(Discovered discovered, boolean triaged) throws InterruptedException, ExecutionException {
+        PdfScanner pdf = discovered.pdf;
+        if (duplicates == null) {
+            return engine.scanFile(pdf, triaged);
+        }
+
+        CompletableFuture<PdfScanResult> original = duplicates.register(pdf, discovered.size);
+        if (original != null) {
+            // The identical file is already being scanned by another worker, which completes it before queueing it.
+            PdfScanResult originalResult = original.get();
+            Logger.info("File " + pdf.getPath().getFileName() + " is a duplicate of "
+                    + originalResult.getInputFilePath().getFileName() + ".");
+            // Identical contents, so also the same number of pages.
+            PdfFileInfo fileInfo = pdf.getFileInfo().withPageCount(originalResult.getPageCount());
+            return new PdfScanResult(fileInfo, PdfScanResult.ResultStatus.DUPLICATE, originalResult.getQrCodePage(),
+                    originalResult.getQrCode());
+        }
+        try {
+            PdfScanResult result = engine.scanFile(pdf, triaged);
+            if (renamer != null && result.isQRCodeFound()) {
+                // The file may be moved as soon as its result is handed over.
+                duplicates.hashBeforeMove(pdf, discovered.size);
+            }
+            duplicates.complete(pdf, result);
+            return result;
+        } catch (RuntimeException e) {
+            duplicates.fail(pdf, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the number of duplicates so far, i.e. files that were not scanned themselves.
+     *
+     * @return number of duplicates
+     */
+    public int getDuplicateCount() {
+        return duplicates == null ? 0 : duplicates.getDuplicateCount();
+    }
+
+    /**
+     * A discovered PDF file, or a stop signal for the workers.
+     */
+    private static class Discovered {
+        private static final Discovered STOP = new Discovered(-1, null, 0);
+        private final long sequence;
+        private final PdfScanner pdf;
+        private final long size;
+
+        Discovered(long sequence, PdfScanner pdf, long size) {
+            this.sequence = sequence;
+            this.pdf = pdf;
+            this.size = size;
+        }
+    }
+
+    /**
+     * A result, an unexpected failure, or the end of the walk (sequence -1) with the total number of files.
+     */
+    private static class Scanned {
+        private final long sequence;
+        private final PdfScanResult result;
+        private final long total;
+        private final Throwable failure;
+
+        Scanned(long sequence, PdfScanResult result, long total, Throwable failure) {
+            this.sequence = sequence;
+            this.result = result;
+            this.total = total;
+            this.failure = failure;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package nl.ls31.qrscan.core;
+
+import java.awt.*;
+
+/**
+ * Region of a page where the QR code is expected. Only this region is rendered and decoded, which saves a lot of
+ * pixel work. The region is relative to the page as it is displayed (i.e. after page rotation).
+ *
+ * @author Lars Steggink
+ */
+public enum ScanRegion {
+    FULL_PAGE("Full page", 0, 0, 1, 1),
+    TOP_LEFT("Top left quarter", 0, 0, 0.5, 0.5),
+    TOP_RIGHT("Top right quarter", 0.5, 0, 0.5, 0.5),
+    BOTTOM_LEFT("Bottom left quarter", 0, 0.5, 0.5, 0.5),
+    BOTTOM_RIGHT("Bottom right quarter", 0.5, 0.5, 0.5, 0.5),
+    TOP_HALF("Top half", 0, 0, 1, 0.5),
+    BOTTOM_HALF("Bottom half", 0, 0.5, 1, 0.5);
+
+    private final String description;
+    private final double x;
+    private final double y;
+    private final double width;
+    private final double height;
+
+    ScanRegion(String description, double x, double y, double width, double height) {
+        this.description = description;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Gets whether this region is the full page.
+     *
+     * @return whether this is the full page
+     */
+    public boolean isFullPage() {
+        return this == FULL_PAGE;
+    }
+
+    /**
+     * Gets the bounds of this region within an image or page of the specified size.
+     *
+     * @param fullWidth  width of the full page (px)
+     * @param fullHeight height of the full page (px)
+     * @return bounds of this region (px), at least 1 by 1
+     */
+    public Rectangle getBounds(int fullWidth, int fullHeight) {
+        int left = (int) Math.floor(x * fullWidth);
+        int top = (int) Math.floor(y * fullHeight);
+        int right = (int) Math.ceil((x + width) * fullWidth);
+        int bottom = (int) Math.ceil((y + height) * fullHeight);
+        return new Rectangle(left, top, Math.max(right - left, 1), Math.max(bottom - top, 1));
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
@@ -0,0 +1,19 @@
+package nl.ls31.qrscan.core;
+
+import nl.ls31.qrscan.model.PdfScanResult;
+
+/**
+ * Receives the results of a running ScanPipeline, as soon as they are known. Methods are called from a single thread.
+ *
+ * @author Lars Steggink
+ */
+public interface ScanResultHandler {
+
+    /**
+     * Called when the result of a file is known.
+     *
+     * @param sequence position of the file in discovery order (starting at 0)
+     * @param result   result
+     */
+    void handle(long sequence, PdfScanResult result);
+}
@@ -0,0 +1,93 @@
+package nl.ls31.qrscan.core;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An in-memory index of the sub directories in the output directory and the next free suffix for every QR code.
+ *
+ * <p>
+ * The index is seeded with a single scan of the output directory. After that, claiming a target name costs no file
+ * system calls at all, except for creating a sub directory the first time a QR code is seen. New names always get a
+ * suffix above the highest existing one, so gaps (e.g. from files that were removed) are not filled. This class is
+ * thread-safe: every claimed name is unique within this index.
+ * </p>
+ *
+ * @author Lars Steggink
+ */
+public class TargetNameIndex {
+    private final Path outputDir;
+    private final Map<String, SubDirectory> subDirectories;
+
+    private TargetNameIndex(Path outputDir, Map<String, SubDirectory> subDirectories) {
+        this.outputDir = outputDir;
+        this.subDirectories = subDirectories;
+    }
+
+    /**
+     * Scans the output directory once, to find the names that are already taken.
+     *
+     * @param outputDir main output directory
+     * @return index
+     * @throws IOException if unable to read the output directory
+     */
+    public static TargetNameIndex scan(Path outputDir) throws IOException {
+        Map<String, SubDirectory> subDirectories = new ConcurrentHashMap<>();
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(outputDir, Files::isDirectory)) {
+            for (Path dir : dirs) {
+                String qr = dir.getFileName().toString();
+                Pattern taken = Pattern.compile(Pattern.quote(qr) + "_(\\d{1,9})\\.pdf");
+                int highest = 0;
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                    for (Path file : files) {
+                        Matcher matcher = taken.matcher(file.getFileName().toString());
+                        if (matcher.matches()) {
+                            highest = Math.max(highest, Integer.parseInt(matcher.group(1)));
+                        }
+                    }
+                }
+                subDirectories.put(qr, new SubDirectory(true, highest + 1));
+            }
+        }
+        return new TargetNameIndex(outputDir, subDirectories);
+    }
+
+    /**
+     * Claims the next free target name for a QR code, e.g. outputDir/001/001_3.pdf. The sub directory is created if
+     * needed.
+     *
+     * @param qr QR code
+     * @return target path, not claimed before by this index
+     * @throws IOException if unable to create the sub directory
+     */
+    public Path claim(String qr) throws IOException {
+        SubDirectory subDirectory = subDirectories.computeIfAbsent(qr, key -> new SubDirectory(false, 1));
+        Path subOutputDir = outputDir.resolve(qr);
+        synchronized (subDirectory) {
+            if (!subDirectory.exists) {
+                Files.createDirectories(subOutputDir);
+                subDirectory.exists = true;
+            }
+            return subOutputDir.resolve(qr + "_" + subDirectory.nextSuffix++ + ".pdf");
+        }
+    }
+
+    /**
+     * A sub directory for a single QR code.
+     */
+    private static class SubDirectory {
+        private boolean exists;
+        private int nextSuffix;
+
+        SubDirectory(boolean exists, int nextSuffix) {
+            this.exists = exists;
+            this.nextSuffix = nextSuffix;
+        }
+    }
+}
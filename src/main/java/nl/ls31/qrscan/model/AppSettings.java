@@ -4,7 +4,13 @@ import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.property.SimpleStringProperty;
+import nl.ls31.qrscan.core.DecodeChain;
+import nl.ls31.qrscan.core.DpiLadder;
+import nl.ls31.qrscan.core.PageSelection;
 import nl.ls31.qrscan.core.PdfScanner;
+import nl.ls31.qrscan.core.ScanOptions;
+import nl.ls31.qrscan.core.ScanRegion;
+import org.tinylog.Logger;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -26,11 +32,18 @@ public class AppSettings {
     private final SimpleStringProperty manualCode;
     private final SimpleObjectProperty<Path> pdfInputDirectory;
     private final SimpleObjectProperty<Path> pdfTargetDirectory;
-    private final SimpleIntegerProperty searchAtPage;
+    private final SimpleStringProperty searchAtPages;
     private final SimpleBooleanProperty withFileRenaming;
     private final SimpleBooleanProperty useFileAttribute;
     private final SimpleBooleanProperty writeFileAttribute;
     private final SimpleBooleanProperty openLogFile;
+    private final SimpleIntegerProperty scanWorkers;
+    private final SimpleObjectProperty<ScanRegion> scanRegion;
+    private final SimpleStringProperty dpiProfile;
+    private final SimpleStringProperty decodeChain;
+    private final SimpleBooleanProperty limitMemory;
+    private final SimpleBooleanProperty useScanCache;
+    private final SimpleBooleanProperty skipDuplicates;
 
     public AppSettings() {
         storedSettings = Preferences.userNodeForPackage(this.getClass());
@@ -43,11 +56,34 @@ public class AppSettings {
         manualCode = new SimpleStringProperty(storedSettings.get("MANUAL_CODE", ""));
         pdfInputDirectory = new SimpleObjectProperty<>(Paths.get(storedSettings.get("PDF_INPUT_DIRECTORY", "")));
         pdfTargetDirectory = new SimpleObjectProperty<>(Paths.get(storedSettings.get("PDF_TARGET_DIRECTORY", "")));
-        searchAtPage = new SimpleIntegerProperty(storedSettings.getInt("SEARCH_AT_PAGE", 1));
+        // Older versions stored a single page number.
+        searchAtPages = new SimpleStringProperty(storedSettings.get("SEARCH_AT_PAGES",
+                String.valueOf(storedSettings.getInt("SEARCH_AT_PAGE", 1))));
         withFileRenaming = new SimpleBooleanProperty(storedSettings.getBoolean("WITH_FILE_RENAMING", false));
         useFileAttribute = new SimpleBooleanProperty(storedSettings.getBoolean("USE_FILE_ATTRIBUTE", true));
         writeFileAttribute = new SimpleBooleanProperty(storedSettings.getBoolean("WRITE_FILE_ATTRIBUTE", true));
         openLogFile = new SimpleBooleanProperty(storedSettings.getBoolean("OPEN_LOG_FILE", false));
+        scanWorkers = new SimpleIntegerProperty(storedSettings.getInt("SCAN_WORKERS", ScanOptions.defaultWorkerCount()));
+        scanRegion = new SimpleObjectProperty<>(readScanRegion(storedSettings.get("SCAN_REGION", ScanRegion.FULL_PAGE.name())));
+        dpiProfile = new SimpleStringProperty(storedSettings.get("DPI_PROFILE", ""));
+        decodeChain = new SimpleStringProperty(storedSettings.get("DECODE_CHAIN", DecodeChain.DEFAULT_CHAIN));
+        limitMemory = new SimpleBooleanProperty(storedSettings.getBoolean("LIMIT_MEMORY", false));
+        useScanCache = new SimpleBooleanProperty(storedSettings.getBoolean("USE_SCAN_CACHE", false));
+        skipDuplicates = new SimpleBooleanProperty(storedSettings.getBoolean("SKIP_DUPLICATES", false));
+    }
+
+    /**
+     * Reads a stored scan region, falling back to the full page for unknown values.
+     *
+     * @param name name of the scan region
+     * @return scan region
+     */
+    private static ScanRegion readScanRegion(String name) {
+        try {
+            return ScanRegion.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return ScanRegion.FULL_PAGE;
+        }
     }
 
     /**
@@ -198,26 +234,27 @@ public class AppSettings {
     }
 
     /**
-     * Gets the page number where the QR code should be searched for, according to the user.
+     * Gets the pages where the QR code should be searched for, according to the user. Falls back to the first page if
+     * the stored selection is invalid.
      *
-     * @return page number
+     * @return page selection
      */
-    public final int getQRPage() {
-        return searchAtPage.get();
+    public final PageSelection getPageSelection() {
+        try {
+            return PageSelection.parse(searchAtPages.get());
+        } catch (IllegalArgumentException e) {
+            return PageSelection.single(1);
+        }
     }
 
     /**
-     * Sets the page number where the QR code should be searched for, according to the user.
+     * Sets the pages where the QR code should be searched for, according to the user.
      *
-     * @param page the page number
-     * @throws IllegalArgumentException if the page number is negative or zero
+     * @param pages the page selection
      */
-    public final void setQRPage(int page) {
-        if (page < 1) {
-            throw new IllegalArgumentException("Page is negative or zero.");
-        }
-        this.searchAtPage.set(page);
-        storedSettings.putInt("SEARCH_AT_PAGE", page);
+    public final void setPageSelection(PageSelection pages) {
+        this.searchAtPages.set(pages.toString());
+        storedSettings.put("SEARCH_AT_PAGES", pages.toString());
     }
 
     /**
@@ -314,4 +351,156 @@ public class AppSettings {
         this.openLogFile.set(openLogFile);
         storedSettings.putBoolean("OPEN_LOG_FILE", openLogFile);
     }
+
+    /**
+     * Gets the number of PDF files that are scanned in parallel.
+     *
+     * @return number of workers
+     */
+    public final int getScanWorkers() {
+        return scanWorkers.get();
+    }
+
+    /**
+     * Sets the number of PDF files that are scanned in parallel.
+     *
+     * @param workers number of workers
+     * @throws IllegalArgumentException if the number of workers is negative or zero
+     */
+    public final void setScanWorkers(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Number of workers is negative or zero.");
+        }
+        this.scanWorkers.set(workers);
+        storedSettings.putInt("SCAN_WORKERS", workers);
+    }
+
+    /**
+     * Gets the region of the page where the QR code should be searched for, according to the user.
+     *
+     * @return scan region
+     */
+    public final ScanRegion getScanRegion() {
+        return scanRegion.get();
+    }
+
+    /**
+     * Sets the region of the page where the QR code should be searched for, according to the user.
+     *
+     * @param region scan region
+     */
+    public final void setScanRegion(ScanRegion region) {
+        this.scanRegion.set(region);
+        storedSettings.put("SCAN_REGION", region.name());
+    }
+
+    /**
+     * Gets the DPI settings for rendering, in the order learned during the previous scan.
+     *
+     * @return DPI ladder
+     */
+    public final DpiLadder getDpiProfile() {
+        String storedOrder = dpiProfile.get();
+        if (storedOrder.isEmpty()) {
+            // Nothing learned yet.
+            return new DpiLadder(DpiLadder.DEFAULT_DPIS);
+        }
+        try {
+            return DpiLadder.parse(storedOrder);
+        } catch (IllegalArgumentException e) {
+            Logger.warn(e, "Stored DPI settings are invalid, using the default DPI settings.");
+            return new DpiLadder(DpiLadder.DEFAULT_DPIS);
+        }
+    }
+
+    /**
+     * Stores the DPI settings for rendering, in the order learned during a scan.
+     *
+     * @param dpiLadder DPI ladder
+     */
+    public final void setDpiProfile(DpiLadder dpiLadder) {
+        this.dpiProfile.set(dpiLadder.toString());
+        storedSettings.put("DPI_PROFILE", dpiLadder.toString());
+    }
+
+    /**
+     * Gets the decode steps that are tried on every image, cheap steps first. Falls back to the default chain if the
+     * stored chain is invalid.
+     *
+     * @return decode chain
+     */
+    public final DecodeChain getDecodeChain() {
+        try {
+            return DecodeChain.parse(decodeChain.get());
+        } catch (IllegalArgumentException e) {
+            return DecodeChain.parse(DecodeChain.DEFAULT_CHAIN);
+        }
+    }
+
+    /**
+     * Sets the decode steps that are tried on every image, cheap steps first.
+     *
+     * @param chain decode chain
+     */
+    public final void setDecodeChain(DecodeChain chain) {
+        this.decodeChain.set(chain.toString());
+        storedSettings.put("DECODE_CHAIN", chain.toString());
+    }
+
+    /**
+     * Gets whether memory use should be limited, for very large PDF files.
+     *
+     * @return whether to limit memory use
+     */
+    public final boolean getLimitMemory() {
+        return limitMemory.getValue();
+    }
+
+    /**
+     * Sets whether memory use should be limited, for very large PDF files.
+     *
+     * @param limitMemory whether to limit memory use
+     */
+    public final void setLimitMemory(boolean limitMemory) {
+        this.limitMemory.set(limitMemory);
+        storedSettings.putBoolean("LIMIT_MEMORY", limitMemory);
+    }
+
+    /**
+     * Gets whether decoded QR codes should be remembered in the scan cache.
+     *
+     * @return whether to use the scan cache
+     */
+    public final boolean getUseScanCache() {
+        return useScanCache.getValue();
+    }
+
+    /**
+     * Sets whether decoded QR codes should be remembered in the scan cache.
+     *
+     * @param useScanCache whether to use the scan cache
+     */
+    public final void setUseScanCache(boolean useScanCache) {
+        this.useScanCache.set(useScanCache);
+        storedSettings.putBoolean("USE_SCAN_CACHE", useScanCache);
+    }
+
+    /**
+     * Gets whether files with identical contents should be scanned only once.
+     *
+     * @return whether to skip duplicates
+     */
+    public final boolean getSkipDuplicates() {
+        return skipDuplicates.getValue();
+    }
+
+    /**
+     * Sets whether files with identical contents should be scanned only once.
+     *
+     * @param skipDuplicates whether to skip duplicates
+     */
+    public final void setSkipDuplicates(boolean skipDuplicates) {
+        this.skipDuplicates.set(skipDuplicates);
+        storedSettings.putBoolean("SKIP_DUPLICATES", skipDuplicates);
+    }
 }
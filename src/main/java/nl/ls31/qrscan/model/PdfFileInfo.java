@@ -0,0 +1,113 @@
+package nl.ls31.qrscan.model;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * Meta data of a PDF file, as captured while scanning it: i.e. the path, size, time stamps, number of pages and the
+ * state of the custom file attribute with the QR code.
+ *
+ * @author Lars Steggink
+ */
+public class PdfFileInfo {
+    /**
+     * Page count if the number of pages is unknown, e.g. because the QR code was taken from the file attribute and the
+     * document was never parsed.
+     */
+    final static public int UNKNOWN_PAGE_COUNT = -9;
+    private final Path path;
+    private final long size;
+    private final FileTime creationTime;
+    private final FileTime lastModifiedTime;
+    private final int pageCount;
+    private final FileAttributeState fileAttributeState;
+
+    /**
+     * @param path               path of the file during the scan
+     * @param size               size of the file (bytes), or -1 if unknown
+     * @param creationTime       creation time, or null if unknown
+     * @param lastModifiedTime   last modified time, or null if unknown
+     * @param pageCount          number of pages, or UNKNOWN_PAGE_COUNT
+     * @param fileAttributeState state of the custom file attribute
+     */
+    public PdfFileInfo(Path path, long size, FileTime creationTime, FileTime lastModifiedTime, int pageCount,
+                       FileAttributeState fileAttributeState) {
+        this.path = path;
+        this.size = size;
+        this.creationTime = creationTime;
+        this.lastModifiedTime = lastModifiedTime;
+        this.pageCount = pageCount;
+        this.fileAttributeState = fileAttributeState;
+    }
+
+    /**
+     * Creates a copy with another number of pages, e.g. taken from an identical file.
+     *
+     * @param pageCount number of pages
+     * @return copy
+     */
+    public PdfFileInfo withPageCount(int pageCount) {
+        return new PdfFileInfo(path, size, creationTime, lastModifiedTime, pageCount, fileAttributeState);
+    }
+
+    /**
+     * Gets the file path as it was during the scan.
+     *
+     * @return file path
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Gets the size of the file.
+     *
+     * @return size (bytes), or -1 if unknown
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the creation time of the file (if supported by the file system).
+     *
+     * @return creation time, or null if unknown
+     */
+    public FileTime getCreationTime() {
+        return creationTime;
+    }
+
+    /**
+     * Gets the last modified time of the file.
+     *
+     * @return last modified time, or null if unknown
+     */
+    public FileTime getLastModifiedTime() {
+        return lastModifiedTime;
+    }
+
+    /**
+     * Gets the number of pages.
+     *
+     * @return number of pages, or UNKNOWN_PAGE_COUNT
+     */
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * Gets the state of the custom file attribute with the QR code.
+     *
+     * @return state
+     */
+    public FileAttributeState getFileAttributeState() {
+        return fileAttributeState;
+    }
+
+    /**
+     * Possible states of the custom file attribute with the QR code.
+     */
+    public enum FileAttributeState {
+        NOT_CHECKED, ABSENT, PRESENT, WRITTEN,
+    }
+}
@@ -1,60 +1,38 @@
 package nl.ls31.qrscan.model;
 
-import javafx.beans.property.SimpleBooleanProperty;
-import javafx.beans.property.SimpleObjectProperty;
-import javafx.beans.property.SimpleStringProperty;
-import nl.ls31.qrscan.core.PdfScanner;
-
-import java.io.IOException;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 
 /**
  * In a PdfScanResult, meta data about QR-PDFs is stored: i.e. the file name (and, after renaming the old and new file
  * name), number of pages in the PDF, if a QR code was found, what it was and on which page it was found.
  * <p>
- * Note: the PdfScanner itself is not stored in the result.
+ * This is a passive result: all meta data is captured while scanning, so creating a result never reads the file
+ * again. Note: the PdfScanner itself is not stored in the result.
  *
  * @author Lars Steggink
  */
 public class PdfScanResult {
 
-    // TODO: remove 'actions' from this class, make it more passive.
     // TODO: extract a PdfRenameResult as a subclass of this one.
 
-    private final SimpleObjectProperty<ResultStatus> resultStatus;
+    private final ResultStatus resultStatus;
     private final int qrCodePage;
-    private final SimpleStringProperty qrCode;
-
-    private final SimpleObjectProperty<Path> inputFilePath;
-    private final SimpleObjectProperty<Path> outputFilePath;
-    private String creation;
-    private final SimpleBooleanProperty isRenamed;
-    private int pageCount;
+    private final String qrCode;
+    private final PdfFileInfo fileInfo;
+    private volatile Path outputFilePath;
 
     /**
-     * @param pdf          the PDF file
+     * @param fileInfo     meta data of the PDF file, captured while scanning
      * @param resultStatus the ResultStatus after QR code scanning
      * @param qrCodePage   the page that was scanned
      * @param qrCode       the QR code, if found, otherwise ""
      */
-    public PdfScanResult(PdfScanner pdf, ResultStatus resultStatus, int qrCodePage, String qrCode) {
-        this.inputFilePath = new SimpleObjectProperty<>(pdf.getPath());
-        this.outputFilePath = inputFilePath;
-        this.isRenamed = new SimpleBooleanProperty(false);
-        try {
-            this.creation = pdf.getCreationTime().toString();
-        } catch (IOException e) {
-            // If time could not be determined, keep it blank.
-            this.creation = "";
-        }
-        try {
-            this.pageCount = pdf.getNumberOfPages();
-        } catch (IOException e) {
-            this.pageCount = -9;
-        }
-        this.resultStatus = new SimpleObjectProperty<>(resultStatus);
+    public PdfScanResult(PdfFileInfo fileInfo, ResultStatus resultStatus, int qrCodePage, String qrCode) {
+        this.fileInfo = fileInfo;
+        this.resultStatus = resultStatus;
         this.qrCodePage = qrCodePage;
-        this.qrCode = new SimpleStringProperty(qrCode);
+        this.qrCode = qrCode;
     }
 
     /**
@@ -63,7 +41,7 @@ public class PdfScanResult {
      * @return whether a QR code was found
      */
     public boolean isQRCodeFound() {
-        return (resultStatus.get() == ResultStatus.QR_CODE_FOUND);
+        return (resultStatus == ResultStatus.QR_CODE_FOUND);
     }
 
     /**
@@ -72,7 +50,7 @@ public class PdfScanResult {
      * @return QR code
      */
     public String getQrCode() {
-        return qrCode.get();
+        return qrCode;
     }
 
     /**
@@ -81,7 +59,7 @@ public class PdfScanResult {
      * @return file path
      */
     public Path getInputFilePath() {
-        return inputFilePath.get();
+        return fileInfo.getPath();
     }
 
     /**
@@ -90,7 +68,7 @@ public class PdfScanResult {
      * @return whether the file was renamed
      */
     public boolean isFileRenamed() {
-        return isRenamed.get();
+        return outputFilePath != null;
     }
 
     /**
@@ -100,7 +78,7 @@ public class PdfScanResult {
      * @return output file path
      */
     public Path getOutputFilePath() {
-        return outputFilePath.get();
+        return outputFilePath == null ? fileInfo.getPath() : outputFilePath;
     }
 
     /**
@@ -109,8 +87,16 @@ public class PdfScanResult {
      * @param outputFilePath the new file path
      */
     public void setOutputFilePath(Path outputFilePath) {
-        this.outputFilePath.set(outputFilePath);
-        this.isRenamed.set(true);
+        this.outputFilePath = outputFilePath;
+    }
+
+    /**
+     * Gets the meta data of the file, as captured while scanning.
+     *
+     * @return file meta data
+     */
+    public PdfFileInfo getFileInfo() {
+        return fileInfo;
     }
 
     /**
@@ -119,16 +105,17 @@ public class PdfScanResult {
      * @return creation time
      */
     public String getFileCreationTime() {
-        return creation;
+        FileTime creationTime = fileInfo.getCreationTime();
+        return creationTime == null ? "" : creationTime.toString();
     }
 
     /**
      * Gets the number of pages.
      *
-     * @return number of pages
+     * @return number of pages, or PdfFileInfo.UNKNOWN_PAGE_COUNT if the document was not parsed
      */
     public int getPageCount() {
-        return pageCount;
+        return fileInfo.getPageCount();
     }
 
     /**
@@ -146,49 +133,14 @@ public class PdfScanResult {
      * @return status
      */
     public ResultStatus getQrCodeScanStatus() {
-        return resultStatus.get();
-    }
-
-    /**
-     * Present a property object to use the input file path in JavaFX.
-     *
-     * @return input file path
-     */
-    public SimpleObjectProperty<Path> inputFilePathProperty() {
-        return inputFilePath;
-    }
-
-    /**
-     * Present a property object to use the renamed file path in JavaFX.
-     *
-     * @return renamed file path
-     */
-    public SimpleObjectProperty<Path> renamedFilePathProperty() {
-        return outputFilePath;
-    }
-
-    /**
-     * Present a property object to use the QR code in JavaFX.
-     *
-     * @return qr code
-     */
-    public SimpleStringProperty qrCodeProperty() {
-        return qrCode;
-    }
-
-    /**
-     * Present a property object to use the QR code status in JavaFX.
-     *
-     * @return qr code status report
-     */
-    public SimpleObjectProperty<ResultStatus> qrCodeStatusProperty() {
         return resultStatus;
     }
 
     /**
-     * Possible status reports for QR code scanned PDF files.
+     * Possible status reports for QR code scanned PDF files. A DUPLICATE was not scanned itself, as it is identical to
+     * another file; its QR code (if any) is taken from that file.
      */
     public enum ResultStatus {
-        QR_CODE_FOUND, NO_FILE_ACCESS, NO_QR_CODE,
+        QR_CODE_FOUND, NO_FILE_ACCESS, NO_QR_CODE, PAGE_TOO_LARGE, DUPLICATE,
     }
 }
@@ -0,0 +1,88 @@
+package nl.ls31.qrscan.view;
+
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.util.Duration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Hands items from background threads to the JavaFX application thread in batches.
+ *
+ * <p>
+ * Items are queued without blocking. At most one update is scheduled on the JavaFX application thread at a time, and
+ * updates are at least a short interval apart, so a fast stream of items (e.g. tens of thousands of scan results) does
+ * not flood Platform.runLater(). Every update receives all items that were queued since the previous update.
+ * </p>
+ *
+ * @param <T> type of the items
+ * @author Lars Steggink
+ */
+public class FxBatchQueue<T> {
+    final static private Duration MIN_INTERVAL = Duration.millis(100);
+    private final ConcurrentLinkedQueue<T> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Consumer<List<T>> consumer;
+    private long lastUpdate;
+
+    /**
+     * Hands items from background threads to the JavaFX application thread in batches.
+     *
+     * @param consumer receives every batch, on the JavaFX application thread
+     */
+    public FxBatchQueue(Consumer<List<T>> consumer) {
+        this.consumer = consumer;
+    }
+
+    /**
+     * Queues an item. This can be called from any thread.
+     *
+     * @param item item
+     */
+    public void add(T item) {
+        pending.add(item);
+        if (scheduled.compareAndSet(false, true)) {
+            Platform.runLater(this::update);
+        }
+    }
+
+    /**
+     * Hands all queued items over immediately, e.g. when the background work is done. Call this on the JavaFX
+     * application thread.
+     */
+    public void flush() {
+        drain();
+    }
+
+    /**
+     * Hands the queued items over, or waits until the minimum interval since the previous update has passed.
+     */
+    private void update() {
+        long wait = lastUpdate + (long) MIN_INTERVAL.toMillis() - System.currentTimeMillis();
+        if (wait > 0) {
+            PauseTransition pause = new PauseTransition(Duration.millis(wait));
+            pause.setOnFinished(event -> update());
+            pause.play();
+            return;
+        }
+        // Allow a new update before draining, so no item is left behind.
+        scheduled.set(false);
+        drain();
+    }
+
+    private void drain() {
+        List<T> batch = new ArrayList<>();
+        T item;
+        while ((item = pending.poll()) != null) {
+            batch.add(item);
+        }
+        lastUpdate = System.currentTimeMillis();
+        if (!batch.isEmpty()) {
+            consumer.accept(batch);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package nl.ls31.qrscan.view;
+
+import javafx.collections.ObservableListBase;
+import nl.ls31.qrscan.model.PdfScanResult;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Read-only view of a ResultStore, e.g. filtered or sorted, for a TableView. The view is an array of indices into the
+ * store (4 bytes per row), or no array at all if it shows all results in store order.
+ *
+ * @author Lars Steggink
+ */
+final class IndexedResultList extends ObservableListBase<PdfScanResult> {
+    private final ResultStore store;
+    private int[] indices;
+    private int size;
+
+    /**
+     * View of all results in store order.
+     *
+     * @param store store
+     * @param size  number of results to show
+     */
+    IndexedResultList(ResultStore store, int size) {
+        this.store = store;
+        this.size = size;
+    }
+
+    /**
+     * View of a selection of results.
+     *
+     * @param store   store
+     * @param indices indices into the store, in the order to show
+     * @param size    number of indices in use
+     */
+    IndexedResultList(ResultStore store, int[] indices, int size) {
+        this.store = store;
+        this.indices = indices;
+        this.size = size;
+    }
+
+    @Override
+    public PdfScanResult get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return store.get(indices == null ? index : indices[index]);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds new results from the store at the end of this view, if they match the filter. A single change is fired for
+     * all added results. Call this on the JavaFX application thread.
+     *
+     * @param from   index of the first new result in the store
+     * @param to     index after the last new result in the store
+     * @param filter tests the index of a result in the store, or null to add all results
+     */
+    void append(int from, int to, IntPredicate filter) {
+        int oldSize = size;
+        if (indices == null && filter == null && from == size) {
+            // Still all results in store order.
+            size += to - from;
+        } else {
+            if (indices == null) {
+                indices = new int[Math.max(size + to - from, 16)];
+                Arrays.setAll(indices, i -> i);
+            }
+            for (int storeIndex = from; storeIndex < to; storeIndex++) {
+                if (filter == null || filter.test(storeIndex)) {
+                    if (size == indices.length) {
+                        indices = Arrays.copyOf(indices, size * 2);
+                    }
+                    indices[size++] = storeIndex;
+                }
+            }
+        }
+        if (size > oldSize) {
+            beginChange();
+            nextAdd(oldSize, size);
+            endChange();
+        }
+    }
+}
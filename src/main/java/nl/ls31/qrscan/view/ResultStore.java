@@ -0,0 +1,67 @@
+package nl.ls31.qrscan.view;
+
+import nl.ls31.qrscan.model.PdfScanResult;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Append-only store of scan results, in chunks of fixed size. Growing the store never copies the results themselves,
+ * only the (small) table of chunks.
+ *
+ * <p>
+ * A single thread (the JavaFX application thread) appends results. Other threads may read all results below the size
+ * they read, e.g. to filter or sort in the background, while results are being appended.
+ * </p>
+ *
+ * @author Lars Steggink
+ */
+final class ResultStore {
+    final static private int CHUNK_BITS = 12;
+    final static private int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private volatile PdfScanResult[][] chunks = new PdfScanResult[16][];
+    private volatile int size;
+
+    /**
+     * Appends results. Only call this from a single thread.
+     *
+     * @param results results to append
+     */
+    void addAll(List<PdfScanResult> results) {
+        PdfScanResult[][] current = chunks;
+        int index = size;
+        for (PdfScanResult result : results) {
+            int chunk = index >>> CHUNK_BITS;
+            if (chunk == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            if (current[chunk] == null) {
+                current[chunk] = new PdfScanResult[CHUNK_SIZE];
+            }
+            current[chunk][index & (CHUNK_SIZE - 1)] = result;
+            index++;
+        }
+        // Publish the chunks before the size, so readers never see a size without its results.
+        chunks = current;
+        size = index;
+    }
+
+    /**
+     * Gets a result.
+     *
+     * @param index index, below size()
+     * @return result
+     */
+    PdfScanResult get(int index) {
+        return chunks[index >>> CHUNK_BITS][index & (CHUNK_SIZE - 1)];
+    }
+
+    /**
+     * Gets the number of results.
+     *
+     * @return number of results
+     */
+    int size() {
+        return size;
+    }
+}
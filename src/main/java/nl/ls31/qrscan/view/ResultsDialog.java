@@ -1,75 +1,370 @@
 package nl.ls31.qrscan.view;
 
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.concurrent.Task;
 import javafx.geometry.Insets;
+import javafx.scene.Node;
 import javafx.scene.Scene;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
-import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import javafx.stage.StageStyle;
+import javafx.util.Duration;
 import nl.ls31.qrscan.model.PdfScanResult;
 
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
 
 /**
  * A dialog window with the results of a ScanPdfsTask or RenamePdfsTask.
+ *
+ * <p>
+ * The dialog can be shown while the task is still running: results are then added as they come in (see addResults()),
+ * together with the progress, the number of files per second, an estimate of the time left and running counts.
+ * </p>
+ *
+ * <p>
+ * The dialog handles millions of results. Results are kept in a compact store, and the table shows a view of indices
+ * into that store. Filtering (by status, QR code or text in the file paths) and sorting run on a background thread;
+ * the table is updated when they are done. New results that match the filter are added at the end of the table.
+ * </p>
  */
 public class ResultsDialog {
+    final static private String ALL_STATUSES = "All statuses";
     private final Stage dialogStage;
+    private final ResultStore store = new ResultStore();
+    private final TableView<PdfScanResult> table = new TableView<>();
+    private final Map<TableColumn<PdfScanResult, ?>, Comparator<PdfScanResult>> comparators = new HashMap<>();
+    private final ComboBox<String> statusFilter = new ComboBox<>();
+    private final TextField codeFilter = new TextField();
+    private final TextField searchFilter = new TextField();
+    private final Label label = new Label();
+    private final Label countLabel = new Label();
+    private final Label statisticsLabel = new Label();
+    private final Map<PdfScanResult.ResultStatus, Integer> statusCounts =
+            new EnumMap<>(PdfScanResult.ResultStatus.class);
+    private final ExecutorService background = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Results view");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private IndexedResultList view = new IndexedResultList(store, 0);
+    private Predicate<PdfScanResult> filter;
+    private boolean updating;
+    private boolean updatePending;
+    private boolean applyingView;
+    private Task<?> task;
+    private Timeline ticker;
+    private long startTime;
 
     /**
-     * A dialog window with the results of a ScanPdfsTask or RenamePdfsTask.
+     * A dialog window with the results of a ScanPdfsTask or RenamePdfsTask that is still running. Results are added
+     * with addResults() while they come in. Call finish() when the task is done.
+     *
+     * @param task              task that is monitored
+     * @param showRenamedColumn whether to show the renamed file paths
      */
-    public ResultsDialog(List<PdfScanResult> results, boolean showRenamedColumn, String summary) {
-        ObservableList<PdfScanResult> resultList = FXCollections.observableArrayList(results);
-
-        dialogStage = new Stage();
-        dialogStage.initStyle(StageStyle.DECORATED);
-        dialogStage.setMinWidth(600);
-        dialogStage.setMinHeight(400);
-        dialogStage.setResizable(true);
-        dialogStage.initModality(Modality.APPLICATION_MODAL);
-        dialogStage.setTitle("Result overview");
+    public ResultsDialog(Task<?> task, boolean showRenamedColumn) {
+        this.task = task;
+        this.startTime = System.nanoTime();
+        label.textProperty().bind(task.messageProperty());
+        ProgressBar progressBar = new ProgressBar();
+        progressBar.setMaxWidth(Double.MAX_VALUE);
+        progressBar.progressProperty().bind(task.progressProperty());
+        dialogStage = createStage(showRenamedColumn, progressBar, label, statisticsLabel);
+        dialogStage.setTitle("Processing...");
+
+        // Also tick while no results come in, so it is clear whether the task is still working.
+        ticker = new Timeline(new KeyFrame(Duration.seconds(1), event -> updateStatistics()));
+        ticker.setCycleCount(Animation.INDEFINITE);
+        ticker.play();
+        updateStatistics();
+    }
 
-        final Label label = new Label(summary);
-        TableView<PdfScanResult> table = new TableView<>();
+    private Stage createStage(boolean showRenamedColumn, Node... header) {
+        Stage stage = new Stage();
+        stage.initStyle(StageStyle.DECORATED);
+        stage.setMinWidth(600);
+        stage.setMinHeight(400);
+        stage.setResizable(true);
+        stage.initModality(Modality.APPLICATION_MODAL);
+        stage.setTitle("Result overview");
 
         TableColumn<PdfScanResult, String> inputPathCol = new TableColumn<>("File path");
         inputPathCol.setMinWidth(400);
-        inputPathCol.setCellValueFactory(new PropertyValueFactory<>("inputFilePath"));
+        inputPathCol.setCellValueFactory(cell ->
+                new ReadOnlyStringWrapper(cell.getValue().getInputFilePath().toString()));
         inputPathCol.setSortType(TableColumn.SortType.DESCENDING);
+        comparators.put(inputPathCol, Comparator.comparing(PdfScanResult::getInputFilePath));
 
         TableColumn<PdfScanResult, String> renamedPathCol = new TableColumn<>("Renamed file path");
         renamedPathCol.setVisible(showRenamedColumn);
         renamedPathCol.setMinWidth(400);
-        renamedPathCol.setCellValueFactory(new PropertyValueFactory<>("renamedFilePath"));
+        renamedPathCol.setCellValueFactory(cell ->
+                new ReadOnlyStringWrapper(cell.getValue().getOutputFilePath().toString()));
         renamedPathCol.setSortType(TableColumn.SortType.DESCENDING);
+        comparators.put(renamedPathCol, Comparator.comparing(PdfScanResult::getOutputFilePath));
 
         TableColumn<PdfScanResult, String> qrCodeStatusCol = new TableColumn<>("QR code status");
         qrCodeStatusCol.setMinWidth(40);
-        qrCodeStatusCol.setCellValueFactory(new PropertyValueFactory<>("qrCodeStatus"));
-        renamedPathCol.setSortType(TableColumn.SortType.DESCENDING);
+        qrCodeStatusCol.setCellValueFactory(cell ->
+                new ReadOnlyStringWrapper(cell.getValue().getQrCodeScanStatus().toString()));
+        comparators.put(qrCodeStatusCol, Comparator.comparing(PdfScanResult::getQrCodeScanStatus));
 
         TableColumn<PdfScanResult, String> qrCodeCol = new TableColumn<>("QR code");
         qrCodeCol.setMinWidth(60);
-        qrCodeCol.setCellValueFactory(new PropertyValueFactory<>("qrCode"));
-        renamedPathCol.setSortType(TableColumn.SortType.DESCENDING);
+        qrCodeCol.setCellValueFactory(cell -> new ReadOnlyStringWrapper(cell.getValue().getQrCode()));
+        comparators.put(qrCodeCol, Comparator.comparing(PdfScanResult::getQrCode));
+
+        table.setItems(view);
+        table.getColumns().addAll(List.of(inputPathCol, renamedPathCol, qrCodeStatusCol, qrCodeCol));
+        // Sort in the background instead of sorting the items in place.
+        table.setSortPolicy(sortedTable -> {
+            if (!applyingView) {
+                updateView();
+            }
+            return true;
+        });
+        VBox.setVgrow(table, Priority.ALWAYS);
 
-        table.setItems(resultList);
-        table.getColumns().addAll(inputPathCol, renamedPathCol, qrCodeStatusCol, qrCodeCol);
+        statusFilter.getItems().add(ALL_STATUSES);
+        for (PdfScanResult.ResultStatus status : PdfScanResult.ResultStatus.values()) {
+            statusFilter.getItems().add(status.toString());
+        }
+        statusFilter.setValue(ALL_STATUSES);
+        statusFilter.valueProperty().addListener((observable, oldValue, newValue) -> updateView());
+        codeFilter.setPromptText("QR code starts with");
+        codeFilter.textProperty().addListener((observable, oldValue, newValue) -> updateView());
+        searchFilter.setPromptText("Search file paths");
+        searchFilter.textProperty().addListener((observable, oldValue, newValue) -> updateView());
+        HBox.setHgrow(searchFilter, Priority.ALWAYS);
+        final HBox filterBox = new HBox();
+        filterBox.setSpacing(5);
+        filterBox.getChildren().addAll(statusFilter, codeFilter, searchFilter, countLabel);
 
         final VBox vbox = new VBox();
         vbox.setSpacing(5);
         vbox.setPadding(new Insets(10, 10, 10, 10));
-        vbox.getChildren().addAll(label, table);
+        vbox.getChildren().addAll(header);
+        vbox.getChildren().addAll(filterBox, table);
 
         Scene scene = new Scene(vbox);
-        dialogStage.setScene(scene);
+        stage.setScene(scene);
+        stage.setOnHidden(event -> {
+            background.shutdownNow();
+            if (ticker != null) {
+                ticker.stop();
+            }
+        });
+        return stage;
+    }
+
+    /**
+     * Adds results that came in while the task is running. Call this on the JavaFX application thread, preferably with
+     * batches of results (see FxBatchQueue).
+     *
+     * @param results new results
+     */
+    public void addResults(List<PdfScanResult> results) {
+        for (PdfScanResult result : results) {
+            statusCounts.merge(result.getQrCodeScanStatus(), 1, Integer::sum);
+        }
+        int from = store.size();
+        store.addAll(results);
+        Predicate<PdfScanResult> currentFilter = filter;
+        view.append(from, store.size(), currentFilter == null ? null : index -> currentFilter.test(store.get(index)));
+        updateCount();
+        updateStatistics();
+    }
+
+    /**
+     * Stops monitoring the task and shows the summary.
+     *
+     * @param summary summary of the task
+     */
+    public void finish(String summary) {
+        if (ticker != null) {
+            ticker.stop();
+        }
+        updateStatistics();
+        label.textProperty().unbind();
+        label.setText(summary);
+        dialogStage.setTitle("Result overview");
+    }
+
+    /**
+     * Filters and sorts the results in the background, as set in the dialog, and shows them when done. If the view is
+     * already being updated, it is updated once more afterwards.
+     */
+    private void updateView() {
+        if (updating) {
+            updatePending = true;
+            return;
+        }
+        if (background.isShutdown()) {
+            return;
+        }
+        updating = true;
+        Predicate<PdfScanResult> newFilter = createFilter();
+        Comparator<PdfScanResult> comparator = createComparator();
+        int size = store.size();
+        background.execute(() -> {
+            IndexedResultList newView = select(size, newFilter, comparator);
+            Platform.runLater(() -> applyView(newView, newFilter, size));
+        });
+    }
+
+    /**
+     * Shows a view that was created in the background, including the results that came in meanwhile.
+     *
+     * @param newView   filtered and sorted view
+     * @param newFilter filter of the view
+     * @param size      number of results in the store when the view was created
+     */
+    private void applyView(IndexedResultList newView, Predicate<PdfScanResult> newFilter, int size) {
+        newView.append(size, store.size(), newFilter == null ? null : index -> newFilter.test(store.get(index)));
+        view = newView;
+        filter = newFilter;
+        applyingView = true;
+        table.setItems(view);
+        applyingView = false;
+        updateCount();
+        updating = false;
+        if (updatePending) {
+            updatePending = false;
+            updateView();
+        }
+    }
+
+    /**
+     * Selects and sorts the results. This runs in the background.
+     *
+     * @param size       number of results in the store to consider
+     * @param filter     filter, or null for all results
+     * @param comparator order, or null for store order
+     * @return view
+     */
+    private IndexedResultList select(int size, Predicate<PdfScanResult> filter, Comparator<PdfScanResult> comparator) {
+        if (filter == null && comparator == null) {
+            return new IndexedResultList(store, size);
+        }
+        int[] indices = new int[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (filter == null || filter.test(store.get(i))) {
+                indices[count++] = i;
+            }
+        }
+        if (comparator != null) {
+            Integer[] boxed = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                boxed[i] = indices[i];
+            }
+            Arrays.parallelSort(boxed, (a, b) -> comparator.compare(store.get(a), store.get(b)));
+            for (int i = 0; i < count; i++) {
+                indices[i] = boxed[i];
+            }
+        }
+        return new IndexedResultList(store, indices, count);
+    }
+
+    /**
+     * Creates the filter as set in the dialog.
+     *
+     * @return filter, or null if all results are shown
+     */
+    private Predicate<PdfScanResult> createFilter() {
+        Predicate<PdfScanResult> newFilter = null;
+        String status = statusFilter.getValue();
+        if (status != null && !status.equals(ALL_STATUSES)) {
+            newFilter = result -> result.getQrCodeScanStatus().toString().equals(status);
+        }
+        String code = codeFilter.getText().trim();
+        if (!code.isEmpty()) {
+            Predicate<PdfScanResult> codeTest = result -> result.getQrCode().startsWith(code);
+            newFilter = newFilter == null ? codeTest : newFilter.and(codeTest);
+        }
+        String search = searchFilter.getText().trim().toLowerCase(Locale.ROOT);
+        if (!search.isEmpty()) {
+            Predicate<PdfScanResult> searchTest = result ->
+                    result.getInputFilePath().toString().toLowerCase(Locale.ROOT).contains(search)
+                            || result.getOutputFilePath().toString().toLowerCase(Locale.ROOT).contains(search);
+            newFilter = newFilter == null ? searchTest : newFilter.and(searchTest);
+        }
+        return newFilter;
+    }
+
+    /**
+     * Creates the order as set by the sort order of the table.
+     *
+     * @return comparator, or null if the results are shown in the order they came in
+     */
+    private Comparator<PdfScanResult> createComparator() {
+        Comparator<PdfScanResult> comparator = null;
+        for (TableColumn<PdfScanResult, ?> column : table.getSortOrder()) {
+            Comparator<PdfScanResult> columnComparator = comparators.get(column);
+            if (columnComparator == null) {
+                continue;
+            }
+            if (column.getSortType() == TableColumn.SortType.DESCENDING) {
+                columnComparator = columnComparator.reversed();
+            }
+            comparator = comparator == null ? columnComparator : comparator.thenComparing(columnComparator);
+        }
+        return comparator;
+    }
+
+    private void updateCount() {
+        countLabel.setText("Showing " + view.size() + " of " + store.size() + " results.");
+    }
+
+    /**
+     * Updates the number of files per second, the estimate of the time left and the counts by result status.
+     */
+    private void updateStatistics() {
+        if (task == null) {
+            return;
+        }
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        double processed = Math.max(task.getWorkDone(), 0);
+        double total = task.getTotalWork();
+        double rate = seconds > 0 ? processed / seconds : 0;
+        String timeLeft = "unknown";
+        if (rate > 0 && total >= processed) {
+            timeLeft = formatDuration((total - processed) / rate);
+        }
+        int found = statusCounts.getOrDefault(PdfScanResult.ResultStatus.QR_CODE_FOUND, 0);
+        int noQR = statusCounts.getOrDefault(PdfScanResult.ResultStatus.NO_QR_CODE, 0);
+        int duplicates = statusCounts.getOrDefault(PdfScanResult.ResultStatus.DUPLICATE, 0);
+        int failed = store.size() - found - noQR - duplicates;
+        statisticsLabel.setText(String.format(Locale.ROOT,
+                "Elapsed %s, %.1f files/s, time left %s. QR code found: %d, not found: %d, failed: %d, duplicates: %d.",
+                formatDuration(seconds), rate, timeLeft, found, noQR, failed, duplicates));
+    }
+
+    private static String formatDuration(double seconds) {
+        long s = Math.round(seconds);
+        return String.format(Locale.ROOT, "%d:%02d:%02d", s / 3600, s / 60 % 60, s % 60);
     }
 
     /**